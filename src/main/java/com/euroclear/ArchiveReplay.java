@@ -0,0 +1,85 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.euroclear.util.CsvWriters.createMonthlyWriters;
+import static com.euroclear.util.LiquidityRecord.populateHeaders;
+import static com.euroclear.util.Parsing.generateCSVfromBytes;
+
+/**
+ * Generates the monthly CSV files again from the response archive (ARCHIVE=true), e.g. after a change of FIXED_PATHS
+ * or EXPAND_FIELDS, without sending any request: the segments are read sequentially and the last response of each
+ * pair is converted. The files are written to a new directory, so that the replay can be compared with the previous
+ * files before replacing them.
+ * <p>
+ * Usage: mvn exec:java -Dexec.mainClass=com.euroclear.ArchiveReplay [-Dexec.args="archiveDir outDir"]
+ */
+public class ArchiveReplay {
+    private static final Logger logger = Logger.getLogger(ArchiveReplay.class);
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    public static void main(String[] args) throws IOException {
+        Path outDir = Paths.get(System.getProperty("user.dir"), "out");
+        Path archiveDir = args.length > 0 ? Paths.get(args[0]) : outDir.resolve("archive");
+        Path replayDir = args.length > 1 ? Paths.get(args[1]) : outDir.resolve("replay");
+        populateHeaders();
+        replay(archiveDir, replayDir);
+    }
+
+    /**
+     * @return the number of responses converted
+     */
+    public static long replay(Path archiveDir, Path outDir) throws IOException {
+        Map<ResponseArchive.Key, ResponseArchive.Location> latest = ResponseArchive.index(archiveDir);
+        if (latest.isEmpty()) {
+            logger.infof("### No response in the archive %s", archiveDir);
+            return 0;
+        }
+        LocalDate start = latest.keySet().stream().map(ResponseArchive.Key::date).min(LocalDate::compareTo).orElseThrow();
+        LocalDate end = latest.keySet().stream().map(ResponseArchive.Key::date).max(LocalDate::compareTo).orElseThrow();
+        logger.infof("### Replaying %d responses from %s to %s: %s - %s", latest.size(), archiveDir, outDir, start, end);
+
+        Files.createDirectories(outDir);
+        Map<String, CsvFileWriter> writers = createMonthlyWriters(start, end, outDir);
+        AtomicLong converted = new AtomicLong();
+        try {
+            long read = ResponseArchive.scan(archiveDir, entry -> {
+                if (!entry.location().equals(latest.get(entry.key()))) {
+                    // Archived again later
+                    return;
+                }
+                StringBuilder csv = new StringBuilder(8192);
+                try {
+                    if (generateCSVfromBytes(entry.body(), entry.key().isin(), entry.key().date(), csv)) {
+                        writers.get(entry.key().date().format(MONTH_FORMAT)).write(csv);
+                        converted.incrementAndGet();
+                    }
+                } catch (JsonProcessingException e) {
+                    logger.errorf("Error processing JSON for ISIN %s on %s: %s", entry.key().isin(), entry.key().date(), e.getOriginalMessage());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            logger.infof("### %d responses read, %d converted", read, converted.get());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (CsvFileWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        return converted.get();
+    }
+}
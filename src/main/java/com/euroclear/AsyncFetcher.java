@@ -0,0 +1,265 @@
+package com.euroclear;
+
+import com.euroclear.util.AdaptiveConcurrencyLimiter;
+import com.euroclear.util.CircuitBreaker;
+import com.euroclear.util.Credential;
+import com.euroclear.util.CredentialPool;
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.HedgePolicy;
+import com.euroclear.util.PayloadBuffer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.euroclear.LiquidityDriveNewClient.acquire;
+import static com.euroclear.LiquidityDriveNewClient.cancel;
+import static com.euroclear.LiquidityDriveNewClient.handleResponse;
+import static com.euroclear.LiquidityDriveNewClient.headerValue;
+import static com.euroclear.LiquidityDriveNewClient.isDryRun;
+import static com.euroclear.LiquidityDriveNewClient.readPayload;
+import static com.euroclear.LiquidityDriveNewClient.recordFailure;
+import static com.euroclear.LiquidityDriveNewClient.release;
+import static com.euroclear.LiquidityDriveNewClient.requestUrl;
+import static com.euroclear.LiquidityDriveNewClient.retryScheduler;
+import static com.euroclear.LiquidityDriveNewClient.settled;
+
+/**
+ * Non-blocking fetch engine built on the httpclient5 async API.
+ * Requests are sent without holding a thread while waiting for the server, the number of
+ * requests in flight being driven by the adaptive concurrency limiter. Responses are handed over
+ * to the producer executor so that the IO reactor threads never block on the consumers' queue.
+ */
+public class AsyncFetcher {
+    private static final Logger logger = Logger.getLogger(AsyncFetcher.class);
+
+    private final CredentialPool credentials;
+    private final BlockingQueue<QueueItem> queue;
+    private final CsvFileWriter errorWriter;
+    private final Executor responseExecutor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final HedgePolicy hedging;
+
+    /**
+     * @param hedging policy of the hedged requests, null to send each request once
+     */
+    public AsyncFetcher(CredentialPool credentials, BlockingQueue<QueueItem> queue, CsvFileWriter errorWriter, Executor responseExecutor, AdaptiveConcurrencyLimiter concurrencyLimiter, HedgePolicy hedging) {
+        this.credentials = credentials;
+        this.queue = queue;
+        this.errorWriter = errorWriter;
+        this.responseExecutor = responseExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.hedging = hedging;
+    }
+
+    /**
+     * Sends a request for every work item and returns once all the responses have been handled.
+     */
+    public void fetchAll(Workload.Cursor cursor) throws InterruptedException {
+        logger.info("### Fetching the work items asynchronously...");
+
+        WorkItem workItem;
+        while ((workItem = cursor.next()) != null) {
+            fetch(workItem);
+        }
+
+        // Wait for the last responses to be handled
+        concurrencyLimiter.awaitIdle();
+    }
+
+    /**
+     * Sends the request of one work item once the circuit breaker and the limiters allow it, without waiting for its response.
+     */
+    public void fetch(WorkItem workItem) throws InterruptedException {
+        CircuitBreaker.Permit permit = acquire();
+        Exchange exchange;
+        try {
+            Credential credential = credentials.acquire();
+            exchange = new Exchange(workItem, permit);
+            exchange.send(credential);
+        } catch (Exception e) {
+            // Nothing sent: the response callbacks will not release the permits
+            cancel(permit);
+            retryScheduler.schedule(workItem, String.valueOf(e.getMessage()));
+            if (e instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            logger.errorf("HTTP request failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+            return;
+        }
+        if (hedging != null && hedging.delayNanos() != Long.MAX_VALUE) {
+            CompletableFuture.delayedExecutor(hedging.delayNanos(), TimeUnit.NANOSECONDS, responseExecutor).execute(exchange::hedge);
+        }
+    }
+
+    private SimpleHttpRequest newRequest(WorkItem workItem, Credential credential) {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.get(requestUrl(workItem));
+
+        // Only add headers if not in dry-run mode
+        if (!isDryRun) {
+            builder.setHeader("Authorization", "Bearer " + credential.getAccessToken());
+            builder.setHeader("Ocp-Apim-Subscription-Key", credential.getApiKey());
+            builder.setHeader("Accept", "application/json");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Requests sent for one work item: the request itself and, when hedged, its copy. The first response settles
+     * the exchange and aborts the other request; the work item is only retried when all the requests failed.
+     */
+    private final class Exchange {
+        private final WorkItem workItem;
+        private final CircuitBreaker.Permit permit;
+        private final long sentAt = System.nanoTime();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final List<Future<SimpleHttpResponse>> requests = new CopyOnWriteArrayList<>();
+
+        private Exchange(WorkItem workItem, CircuitBreaker.Permit permit) {
+            this.workItem = workItem;
+            this.permit = permit;
+        }
+
+        /**
+         * @return false when the exchange was settled before the hedge could be sent: nothing was sent
+         */
+        private boolean send(Credential credential) throws Exception {
+            boolean hedge = !requests.isEmpty();
+            // Counted before checking the exchange, so that it cannot be settled as lost meanwhile
+            inFlight.incrementAndGet();
+            if (hedge && settled.get()) {
+                inFlight.decrementAndGet();
+                return false;
+            }
+            Future<SimpleHttpResponse> request;
+            try {
+                request = credential.httpAsyncClient().execute(newRequest(workItem, credential), new FutureCallback<SimpleHttpResponse>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        if (settled.compareAndSet(false, true)) {
+                            abortOthers();
+                            if (hedge) {
+                                hedging.won();
+                            }
+                            handle(response, credential);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        logger.errorf("HTTP request failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+                        lost(String.valueOf(e.getMessage()));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        if (!settled.get()) {
+                            logger.errorf("HTTP request cancelled for ISIN %s on %s", workItem.isin(), workItem.date());
+                        }
+                        lost("request cancelled");
+                    }
+                });
+            } catch (Exception e) {
+                if (hedge) {
+                    // The first request may have failed meanwhile, waiting for this one
+                    lost(String.valueOf(e.getMessage()));
+                } else {
+                    inFlight.decrementAndGet();
+                }
+                throw e;
+            }
+            requests.add(request);
+            if (hedge && settled.get()) {
+                // Settled while the hedge was sent, abortOthers() may have missed it
+                request.cancel(true);
+            }
+            return true;
+        }
+
+        /**
+         * Sends the copy of the request if it is still unanswered and the budget allows it.
+         */
+        private void hedge() {
+            if (settled.get() || !hedging.tryHedge()) {
+                return;
+            }
+            Credential credential = credentials.tryAcquire();
+            if (credential == null) {
+                // No quota left right now: a hedge would only delay the other requests
+                hedging.refund();
+                return;
+            }
+            logger.debugf("Hedging the request of ISIN %s on %s", workItem.isin(), workItem.date());
+            try {
+                if (!send(credential)) {
+                    hedging.refund();
+                }
+            } catch (Exception e) {
+                hedging.refund();
+                logger.errorf("Hedged request failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+            }
+        }
+
+        /**
+         * Called when one of the requests failed: the work item is retried once none is left in flight.
+         */
+        private void lost(String reason) {
+            if (inFlight.decrementAndGet() == 0 && settled.compareAndSet(false, true)) {
+                retryScheduler.schedule(workItem, reason);
+                release(permit, null, -1, System.nanoTime() - sentAt, null);
+            }
+        }
+
+        private void abortOthers() {
+            for (Future<SimpleHttpResponse> request : requests) {
+                request.cancel(true);
+            }
+        }
+
+        private void handle(SimpleHttpResponse response, Credential credential) {
+            long latency = System.nanoTime() - sentAt;
+            if (hedging != null) {
+                hedging.record(latency);
+            }
+            responseExecutor.execute(() -> {
+                int statusCode = response.getCode();
+                try {
+                    byte[] body = response.getBodyBytes();
+                    QueueItem payload = null;
+                    if (statusCode == HttpStatus.SC_OK && body != null) {
+                        // The body of the async response is used as is, without a copy
+                        payload = readPayload(workItem, PayloadBuffer.wrap(body));
+                    }
+                    handleResponse(workItem, statusCode, payload, queue, errorWriter);
+                } catch (IOException | RuntimeException e) {
+                    // Read, parse or write error: retried like a failed request, as by the classic engine
+                    logger.errorf("Error handling the response for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+                    retryScheduler.schedule(workItem, String.valueOf(e.getMessage()));
+                } catch (InterruptedException e) {
+                    // The run is stopping: the pair is left for the next one
+                    Thread.currentThread().interrupt();
+                    logger.errorf("Interrupted while handling the response for ISIN %s on %s", workItem.isin(), workItem.date());
+                    recordFailure(workItem.isin(), workItem.date());
+                    settled(workItem.isin(), workItem.date());
+                } finally {
+                    release(permit, credential, statusCode, latency, headerValue(response, HttpHeaders.RETRY_AFTER));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.euroclear;
+
+import com.euroclear.util.Metrics;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Pre-pass finding, with a few probe requests, the window of business days where the data of an ISIN is available,
+ * so that the sweep does not request the days before its issue nor after its redemption.
+ * <p>
+ * The availability of an ISIN is assumed to be one contiguous window. Only a day the ISIN is unknown on (404) is
+ * outside the window: a day without data (204) is inside it, the window may hold such holes. The probes look for one
+ * day inside the window, the last and the first days first, then the middles of the range at a finer and finer stride
+ * down to minWindow business days. The bounds of the window are then found by binary search on each side of that day.
+ * An ISIN without any probe inside the window is skipped; a probe without a final answer (exception, 429, 5xx...)
+ * keeps the whole range of the ISIN.
+ */
+public class AvailabilityProber {
+    private static final Logger logger = Logger.getLogger(AvailabilityProber.class);
+
+    /**
+     * AVAILABLE: data returned (200), EMPTY: no data on that day (204), UNAVAILABLE: ISIN unknown on that day (404)
+     */
+    public enum Availability { AVAILABLE, EMPTY, UNAVAILABLE, UNKNOWN }
+
+    private final Function<WorkItem, Availability> probe;
+    private final int minWindow;
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong trimmed = new AtomicLong();
+
+    /**
+     * @param probe sends the request of a work item and tells whether data was returned, or why not
+     * @param minWindow smallest window of business days which is guaranteed to be found
+     */
+    public AvailabilityProber(Function<WorkItem, Availability> probe, int minWindow) {
+        this.probe = probe;
+        this.minWindow = Math.max(1, minWindow);
+
+        Metrics.gauge("probe.requests", probes::get);
+        Metrics.gauge("probe.trimmed", trimmed::get);
+    }
+
+    /**
+     * Restricts the range of every ISIN of the workload to its availability window, probing the ISINs
+     * in parallel on the executor. Only the work items of the ISINs being probed are created.
+     */
+    public void trimAll(Workload workload, Executor executor) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(workload.isinCount());
+        for (int i = 0; i < workload.isinCount(); i++) {
+            int isinIndex = i;
+            futures.add(CompletableFuture.runAsync(() -> {
+                List<WorkItem> workItems = workload.workItems(isinIndex);
+                List<WorkItem> window = trim(workItems);
+                if (window.isEmpty()) {
+                    workload.exclude(isinIndex);
+                } else if (window.size() < workItems.size()) {
+                    workload.restrict(isinIndex, window.get(0).date(), window.get(window.size() - 1).date());
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        logger.infof("### Availability probes: %d requests, %d work items removed", probes.get(), trimmed.get());
+    }
+
+    /**
+     * @param workItems work items of one ISIN, sorted by date
+     * @return the work items inside the availability window of the ISIN
+     */
+    public List<WorkItem> trim(List<WorkItem> workItems) {
+        int n = workItems.size();
+        if (n < 2 * minWindow) {
+            // Probing would cost about as much as the sweep
+            return workItems;
+        }
+        Probes probed = new Probes(workItems);
+        try {
+            int anchor = probed.findInside();
+            List<WorkItem> window = anchor < 0
+                ? List.of()
+                : workItems.subList(probed.firstInside(anchor), probed.lastInside(anchor) + 1);
+            trimmed.addAndGet(n - window.size());
+            if (window.size() < n) {
+                logger.infof("### ISIN %s available from %s to %s", workItems.get(0).isin(),
+                    window.isEmpty() ? "-" : window.get(0).date(), window.isEmpty() ? "-" : window.get(window.size() - 1).date());
+            }
+            return window;
+        } catch (UnknownAvailabilityException e) {
+            logger.infof("### ISIN %s: availability unknown, keeping the whole range", workItems.get(0).isin());
+            return workItems;
+        }
+    }
+
+    /**
+     * Results of the probes of one ISIN, by index of the work item: true when inside the window.
+     */
+    private final class Probes {
+        private final List<WorkItem> workItems;
+        private final TreeMap<Integer, Boolean> results = new TreeMap<>();
+
+        Probes(List<WorkItem> workItems) {
+            this.workItems = workItems;
+        }
+
+        boolean isInside(int index) {
+            Boolean inside = results.get(index);
+            if (inside == null) {
+                probes.incrementAndGet();
+                Availability availability = probe.apply(workItems.get(index));
+                if (availability == Availability.UNKNOWN) {
+                    throw new UnknownAvailabilityException();
+                }
+                inside = availability != Availability.UNAVAILABLE;
+                results.put(index, inside);
+            }
+            return inside;
+        }
+
+        /**
+         * @return the index of a work item inside the window, or -1
+         */
+        int findInside() {
+            int n = workItems.size();
+            if (isInside(n - 1)) {
+                return n - 1;
+            }
+            if (isInside(0)) {
+                return 0;
+            }
+            for (int parts = 2; n / parts >= minWindow; parts *= 2) {
+                for (int k = 1; k < parts; k += 2) {
+                    int index = (int) ((long) k * n / parts);
+                    if (isInside(index)) {
+                        return index;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        int firstInside(int anchor) {
+            Map.Entry<Integer, Boolean> unavailable = results.headMap(anchor, false).descendingMap().entrySet().stream()
+                .filter(e -> !e.getValue()).findFirst().orElse(null);
+            int lo = unavailable == null ? -1 : unavailable.getKey();
+            int hi = anchor;
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (isInside(mid)) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            return hi;
+        }
+
+        int lastInside(int anchor) {
+            Map.Entry<Integer, Boolean> unavailable = results.tailMap(anchor, false).entrySet().stream()
+                .filter(e -> !e.getValue()).findFirst().orElse(null);
+            int lo = anchor;
+            int hi = unavailable == null ? workItems.size() : unavailable.getKey();
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (isInside(mid)) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static class UnknownAvailabilityException extends RuntimeException {
+        UnknownAvailabilityException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.Metrics;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of the (ISIN, date) pairs whose CSV rows have been written and flushed.
+ * Each line holds "ISIN,yyyy-MM-dd". When a run starts, the journal is loaded into one BitSet per ISIN,
+ * indexed by the number of days since the start date of the run, and the work items already completed
+ * are skipped by the workload. An interrupted run can so be restarted without fetching again,
+ * and duplicating in the monthly files, what was already written.
+ * Delete the journal file to fetch the whole range again.
+ */
+public class CheckpointJournal implements Closeable {
+    private static final Logger logger = Logger.getLogger(CheckpointJournal.class);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final LocalDate start;
+    private final int days;
+    private final Map<String, BitSet> completed = new HashMap<>();
+    private final CsvFileWriter writer;
+    private long loaded;
+    private long recorded;
+
+    /**
+     * Loads the pairs of the journal falling in the range of dates, then opens the journal for appending.
+     */
+    public CheckpointJournal(Path path, LocalDate start, LocalDate end) throws IOException {
+        this.start = start;
+        this.days = (int) ChronoUnit.DAYS.between(start, end) + 1;
+        boolean endsWithNewLine = true;
+        if (Files.exists(path)) {
+            load(path);
+            endsWithNewLine = endsWithNewLine(path);
+        }
+        this.writer = new CsvFileWriter(path);
+        if (!endsWithNewLine) {
+            // The previous run stopped in the middle of a line, which has been ignored by load()
+            writer.writeLine("");
+        }
+        logger.infof("### Checkpoint journal %s: %d pairs already completed", path, loaded);
+
+        Metrics.gauge("checkpoint.completed", () -> loaded + recorded);
+    }
+
+    public synchronized boolean isCompleted(String isin, LocalDate date) {
+        int index = index(date);
+        BitSet dates = completed.get(isin);
+        return dates != null && index >= 0 && dates.get(index);
+    }
+
+    /**
+     * Records the items whose rows have just been written. Must be called once the rows are flushed,
+     * so that a pair is never journaled without its rows.
+     */
+    public synchronized void markCompleted(Collection<QueueItem> items) throws IOException {
+        boolean written = false;
+        for (QueueItem item : items) {
+            int index = index(item.date());
+            if (index < 0) {
+                continue;
+            }
+            BitSet dates = completed.computeIfAbsent(item.isin(), k -> new BitSet(days));
+            if (!dates.get(index)) {
+                dates.set(index);
+                writer.writeLine(item.isin() + "," + item.date().format(DATE_FORMAT));
+                recorded++;
+                written = true;
+            }
+        }
+        if (written) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Loads the pairs completed by another instance sharing the output directory (see {@link LeaseCoordinator}),
+     * so that they are skipped too. They are not recorded in this journal.
+     */
+    public synchronized void include(Path other) throws IOException {
+        if (Files.exists(other)) {
+            long before = loaded;
+            load(other);
+            logger.infof("### Checkpoint journal %s: %d pairs completed by another instance", other, loaded - before);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private int index(LocalDate date) {
+        long index = ChronoUnit.DAYS.between(start, date);
+        return index >= 0 && index < days ? (int) index : -1;
+    }
+
+    private void load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma <= 0) {
+                    continue;
+                }
+                try {
+                    int index = index(LocalDate.parse(line.substring(comma + 1), DATE_FORMAT));
+                    if (index >= 0) {
+                        BitSet dates = completed.computeIfAbsent(line.substring(0, comma), k -> new BitSet(days));
+                        if (!dates.get(index)) {
+                            dates.set(index);
+                            loaded++;
+                        }
+                    }
+                } catch (DateTimeParseException e) {
+                    logger.debugf("Ignoring the invalid checkpoint line: %s", line);
+                }
+            }
+        }
+    }
+
+    private static boolean endsWithNewLine(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            if (channel.size() == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+}
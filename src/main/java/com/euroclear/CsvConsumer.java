@@ -1,6 +1,5 @@
 package com.euroclear;
 
-import com.euroclear.util.CsvFileWriter;
 import org.jboss.logging.Logger;
 
 import java.io.IOException;
@@ -11,6 +10,8 @@ import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 
+import static com.euroclear.LiquidityDriveNewClient.recordFailure;
+import static com.euroclear.LiquidityDriveNewClient.settled;
 import static com.euroclear.util.Batch.BATCH_SIZE;
 import static com.euroclear.util.Parsing.generateCSVfromJSON;
 
@@ -18,12 +19,12 @@ public class CsvConsumer implements Runnable {
     private static final Logger logger = Logger.getLogger(CsvConsumer.class);
 
     private final BlockingQueue<QueueItem> queue;
-    private final Map<String, CsvFileWriter> writers;
+    private final OutputStage output;
     private final CountDownLatch latch;
 
-    public CsvConsumer(BlockingQueue<QueueItem> queue, Map<String, CsvFileWriter> writers, CountDownLatch latch) {
+    public CsvConsumer(BlockingQueue<QueueItem> queue, OutputStage output, CountDownLatch latch) {
         this.queue = queue;
-        this.writers = writers;
+        this.output = output;
         this.latch = latch;
     }
 
@@ -38,9 +39,8 @@ public class CsvConsumer implements Runnable {
             while (true) {
                 QueueItem item = queue.take();
 
-                // --- THIS IS THE CRITICAL FIX ---
-                // Use .equals() to correctly check for the shutdown signal
-                if ("POISON_PILL".equals(item.json())) {
+                // The shutdown signal is a single instance
+                if (item == QueueItem.POISON_PILL) {
                     break; // Exit the loop
                 }
 
@@ -51,12 +51,13 @@ public class CsvConsumer implements Runnable {
 
                 // Correct and clean way to process the items
                 Map<String, StringBuilder> monthlyBuffers = new java.util.HashMap<>();
+                Map<String, List<QueueItem>> monthlyItems = new java.util.HashMap<>();
                 for (QueueItem currentItem : localBatch) {
                     logger.debugf("Processing item ISIN (JSON to CSV): %s",item.isin());
-                    processItem(currentItem, monthlyBuffers);
+                    processItem(currentItem, monthlyBuffers, monthlyItems);
                 }
 
-                writeBuffers(monthlyBuffers);
+                writeBuffers(monthlyBuffers, monthlyItems);
             }
 
         } catch (InterruptedException e) {
@@ -66,29 +67,52 @@ public class CsvConsumer implements Runnable {
         }
     }
 
-    private void processItem(QueueItem item, Map<String, StringBuilder> monthlyBuffers) {
-        String monthKey = item.date().format(DateTimeFormatter.ofPattern("yyyy-MM"));
-        StringBuilder buffer = monthlyBuffers.computeIfAbsent(monthKey, k -> new StringBuilder(8192));
+    private void processItem(QueueItem item, Map<String, StringBuilder> monthlyBuffers, Map<String, List<QueueItem>> monthlyItems) {
+        CharSequence rows;
+        if (item.csv() != null) {
+            // Already converted by the producer while streaming the response
+            rows = item.csv();
+        } else {
+            try {
+                rows = generateCSVfromJSON(item);
+            } catch (IOException | RuntimeException e) {
+                // No row for this pair: it must not be journaled, nor the watermark of the ISIN move over it
+                logger.errorf("Error processing JSON for ISIN %s on %s: %s", item.isin(), item.date(), e.getMessage());
+                recordFailure(item.isin(), item.date());
+                settled(item.isin(), item.date());
+                return;
+            } finally {
+                // The rows no longer need the bytes of the response
+                item.json().release();
+            }
+        }
 
-        buffer.append(generateCSVfromJSON(item));
+        String monthKey = item.date().format(DateTimeFormatter.ofPattern("yyyy-MM"));
+        monthlyBuffers.computeIfAbsent(monthKey, k -> new StringBuilder(8192)).append(rows);
+        monthlyItems.computeIfAbsent(monthKey, k -> new ArrayList<>()).add(item);
     }
 
-    private void writeBuffers(Map<String, StringBuilder> monthlyBuffers) {
+    /**
+     * Hands the rows over to the writers of the months, which settle the items once their rows are committed.
+     */
+    private void writeBuffers(Map<String, StringBuilder> monthlyBuffers, Map<String, List<QueueItem>> monthlyItems) throws InterruptedException {
         for (Map.Entry<String, StringBuilder> entry : monthlyBuffers.entrySet()) {
-            CsvFileWriter writer = writers.get(entry.getKey());
-            if (writer != null && !entry.getValue().isEmpty()) {
-                // This log will tell you if the consumer is actually receiving data to write
-                logger.debugf("Writing %s bytes to file for month %s", entry.getValue().length(), entry.getKey());
-
-                try {
-                    synchronized (writer) {
-                        writer.write(entry.getValue().toString());
-                        writer.flush();
-                    }
-                } catch (IOException e) {
-                    logger.errorf("Error writing to file for month %s: %s", entry.getKey(), e.getMessage());
+            List<QueueItem> items = monthlyItems.get(entry.getKey());
+            if (entry.getValue().isEmpty()) {
+                // Nothing to write for these items
+                for (QueueItem item : items) {
+                    settled(item.isin(), item.date());
                 }
+            } else if (!output.submit(entry.getKey(), entry.getValue(), items)) {
+                // The rows are lost: the watermarks must not move over these pairs
+                logger.errorf("No file for month %s, %d work items not written", entry.getKey(), items.size());
+                for (QueueItem item : items) {
+                    recordFailure(item.isin(), item.date());
+                    settled(item.isin(), item.date());
+                }
+            } else {
+                logger.debugf("Writing %s bytes to file for month %s", entry.getValue().length(), entry.getKey());
             }
         }
     }
-}
\ No newline at end of file
+}
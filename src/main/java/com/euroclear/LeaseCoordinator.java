@@ -0,0 +1,455 @@
+package com.euroclear;
+
+import com.euroclear.util.Metrics;
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coordination of several instances working through the same workload with a shared directory only, no broker.
+ * The workload is split into chunks of one ISIN x one month ({@link Workload.Chunk}), which the instances claim
+ * one after the other while their producers pull work items:
+ * <ul>
+ *     <li>claim: atomic creation of "leases/ISIN_yyyy-MM.lease.1" holding the id of the instance. The creation fails
+ *     when another instance holds the chunk, which is then left to it</li>
+ *     <li>heartbeat: every third of the TTL, the instance touches its lease. A lease not touched for a TTL
+ *     belongs to a dead instance: it is reclaimed by the first instance creating the next generation of the lease,
+ *     "ISIN_yyyy-MM.lease.n+1", which loads the checkpoint journal of the dead instance so that its rows are not
+ *     fetched twice. The lease of an owner is never moved nor rewritten by the others: an owner finding a later
+ *     generation, or its own lease deleted, knows that it lost the chunk</li>
+ *     <li>completion: once every work item of a claimed chunk is settled (rows written, empty, failed), the
+ *     "done/ISIN_yyyy-MM" marker is written and synced with the range of dates of the chunk, then the lease is deleted</li>
+ * </ul>
+ * An instance without chunk left to claim waits for the chunks leased by the others to be done, or to expire,
+ * so that the run of each instance only ends once the whole workload is done.
+ * <p>
+ * The clocks of the machines sharing the directory must be synchronised, far below the TTL.
+ */
+public class LeaseCoordinator implements Closeable {
+    private static final Logger logger = Logger.getLogger(LeaseCoordinator.class);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private enum Claim { CLAIMED, BUSY, DONE }
+
+    /**
+     * Chunk claimed by this instance. Guarded by the coordinator.
+     */
+    private static final class ChunkState {
+        private final Workload.Chunk chunk;
+        private final String id;
+        private final int generation;
+        private int outstanding;
+        private boolean exhausted;
+        // Also read by the cursor
+        private volatile boolean lost;
+
+        ChunkState(Workload.Chunk chunk, String id, int generation) {
+            this.chunk = chunk;
+            this.id = id;
+            this.generation = generation;
+        }
+    }
+
+    private final Workload workload;
+    private final Path leaseDir;
+    private final Path doneDir;
+    private final String owner;
+    private final long ttlMillis;
+    private final Consumer<String> onReclaim;
+    private final Map<String, ChunkState> owned = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * @param dir shared directory of the leases and done markers
+     * @param owner id of this instance, unique among the running instances
+     * @param onReclaim called with the id of the previous owner before the work items of a reclaimed chunk are pulled
+     */
+    public LeaseCoordinator(Workload workload, Path dir, String owner, long ttlSeconds, Consumer<String> onReclaim) throws IOException {
+        this.workload = workload;
+        this.leaseDir = Files.createDirectories(dir.resolve("leases"));
+        this.doneDir = Files.createDirectories(dir.resolve("done"));
+        this.owner = owner;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.onReclaim = onReclaim;
+
+        long heartbeatMillis = heartbeatMillis();
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LeaseHeartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::renewLeases, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        logger.infof("### Lease coordination in %s as %s - TTL: %d s", dir, owner, ttlSeconds);
+
+        Metrics.gauge("leases.claimed", claimed::get);
+        Metrics.gauge("leases.reclaimed", reclaimed::get);
+        Metrics.gauge("leases.done", done::get);
+        Metrics.gauge("leases.lost", lost::get);
+        Metrics.gauge("leases.owned", owned::size);
+    }
+
+    /**
+     * @return a cursor over the work items of the chunks claimed on demand by this instance
+     */
+    public Workload.Cursor cursor() {
+        return workload.cursor(pairs(), pair -> pulled(workload.workItem(pair)));
+    }
+
+    /**
+     * Must be called once the outcome of a work item pulled from the cursor is final.
+     */
+    public synchronized void settled(String isin, LocalDate date) {
+        ChunkState state = owned.get(chunkId(isin, date));
+        if (state != null) {
+            state.outstanding--;
+            completeIfSettled(state);
+        }
+    }
+
+    /**
+     * Stops the heartbeat and releases the leases of the chunks not done, so that they are claimed
+     * by the other instances, or by the next run, without waiting for their expiry.
+     */
+    @Override
+    public synchronized void close() {
+        heartbeat.shutdownNow();
+        for (ChunkState state : owned.values()) {
+            try {
+                if (!state.lost) {
+                    deleteLeases(state.id, state.generation);
+                }
+            } catch (IOException e) {
+                logger.errorf("Error releasing the lease %s: %s", leasePath(state.id, state.generation), e.getMessage());
+            }
+        }
+        if (!owned.isEmpty()) {
+            logger.infof("### %d leases released without being done", owned.size());
+        }
+        owned.clear();
+        logger.infof("### Leases: %d claimed, %d reclaimed, %d done, %d lost", claimed.get(), reclaimed.get(), done.get(), lost.get());
+    }
+
+    /**
+     * Pairs of the chunks claimed one after the other. Only iterated by the cursor, under its lock.
+     */
+    private PrimitiveIterator.OfLong pairs() {
+        return new PrimitiveIterator.OfLong() {
+            private final Iterator<Workload.Chunk> chunks = workload.monthlyChunks().iterator();
+            // Chunks leased by other instances, checked again once all the others are claimed or done
+            private final Deque<Workload.Chunk> elsewhere = new ArrayDeque<>();
+            private ChunkState current;
+            private PrimitiveIterator.OfLong pairs;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || current.lost || !pairs.hasNext()) {
+                    if (current != null) {
+                        exhausted(current);
+                        current = null;
+                    }
+                    ChunkState next = claimNext();
+                    if (next == null) {
+                        return false;
+                    }
+                    current = next;
+                    pairs = workload.pairs(next.chunk);
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pairs.nextLong();
+            }
+
+            private ChunkState claimNext() {
+                while (chunks.hasNext()) {
+                    Workload.Chunk chunk = chunks.next();
+                    Claim claim = claim(chunk);
+                    if (claim == Claim.CLAIMED) {
+                        return owned.get(chunkId(chunk));
+                    } else if (claim == Claim.BUSY) {
+                        elsewhere.add(chunk);
+                    }
+                }
+                while (!elsewhere.isEmpty()) {
+                    for (int n = elsewhere.size(); n > 0; n--) {
+                        Workload.Chunk chunk = elsewhere.poll();
+                        Claim claim = claim(chunk);
+                        if (claim == Claim.CLAIMED) {
+                            return owned.get(chunkId(chunk));
+                        } else if (claim == Claim.BUSY) {
+                            elsewhere.add(chunk);
+                        }
+                    }
+                    if (!elsewhere.isEmpty()) {
+                        logger.infof("### Waiting for %d chunks leased by other instances", elsewhere.size());
+                        try {
+                            Thread.sleep(heartbeatMillis());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return null;
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private Claim claim(Workload.Chunk chunk) {
+        String id = chunkId(chunk);
+        int generation;
+        try {
+            if (isDone(chunk)) {
+                return Claim.DONE;
+            }
+            int current = currentGeneration(id);
+            generation = current == 0 ? create(id, 1) : reclaim(id, current);
+            if (generation < 0) {
+                return Claim.BUSY;
+            }
+            if (isDone(chunk)) {
+                // Completed by another instance between the check and the claim
+                deleteLeases(id, generation);
+                return Claim.DONE;
+            }
+        } catch (IOException e) {
+            logger.errorf("Error claiming the chunk %s: %s", id, e.getMessage());
+            return Claim.BUSY;
+        }
+        owned.put(id, new ChunkState(chunk, id, generation));
+        claimed.incrementAndGet();
+        logger.debugf("Chunk %s claimed", id);
+        return Claim.CLAIMED;
+    }
+
+    /**
+     * Takes over the current generation of a lease when it was left by a previous run of this instance, or expired.
+     * An expired lease is superseded by the next generation, created atomically: only one of the instances
+     * reclaiming it succeeds, and the file of the previous owner is only deleted once it is superseded.
+     *
+     * @return the generation of the lease now belonging to this instance, or -1
+     */
+    private int reclaim(String id, int current) throws IOException {
+        Path lease = leasePath(id, current);
+        FileTime seen;
+        String previousOwner;
+        try {
+            seen = Files.getLastModifiedTime(lease);
+            previousOwner = readOwner(lease);
+        } catch (NoSuchFileException e) {
+            // Released or superseded meanwhile: claimed again on the next pass
+            return -1;
+        }
+        if (owner.equals(previousOwner)) {
+            Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis()));
+            return current;
+        }
+        if (seen.toMillis() + ttlMillis > System.currentTimeMillis()) {
+            return -1;
+        }
+        int generation = create(id, current + 1);
+        if (generation < 0) {
+            // Another instance reclaimed it first
+            return -1;
+        }
+        deleteLeases(id, current);
+        reclaimed.incrementAndGet();
+        logger.infof("### Lease %s reclaimed from %s", lease.getFileName(), previousOwner);
+        onReclaim.accept(previousOwner);
+        return generation;
+    }
+
+    /**
+     * @return the generation created, or -1 when it already exists
+     */
+    private int create(String id, int generation) throws IOException {
+        try {
+            Files.writeString(leasePath(id, generation), owner, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return generation;
+        } catch (FileAlreadyExistsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the latest generation of the lease of the chunk, 0 when it is not leased
+     */
+    private int currentGeneration(String id) throws IOException {
+        int current = 0;
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(leaseDir, id + ".lease.*")) {
+            for (Path lease : leases) {
+                current = Math.max(current, generation(id, lease));
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Deletes the lease of the generation and the ones it superseded, never a later one.
+     */
+    private void deleteLeases(String id, int generation) throws IOException {
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(leaseDir, id + ".lease.*")) {
+            for (Path lease : leases) {
+                int other = generation(id, lease);
+                if (other > 0 && other <= generation) {
+                    Files.deleteIfExists(lease);
+                }
+            }
+        }
+    }
+
+    private static int generation(String id, Path lease) {
+        try {
+            return Integer.parseInt(lease.getFileName().toString().substring(id.length() + ".lease.".length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private synchronized void pulled(WorkItem workItem) {
+        ChunkState state = owned.get(chunkId(workItem.isin(), workItem.date()));
+        if (state != null) {
+            state.outstanding++;
+        }
+    }
+
+    private synchronized void exhausted(ChunkState state) {
+        state.exhausted = true;
+        completeIfSettled(state);
+    }
+
+    private void completeIfSettled(ChunkState state) {
+        if (!state.exhausted || state.outstanding > 0) {
+            return;
+        }
+        owned.remove(state.id);
+        if (state.lost) {
+            return;
+        }
+        try {
+            markDone(state.chunk, state.id);
+            deleteLeases(state.id, state.generation);
+            done.incrementAndGet();
+            logger.debugf("Chunk %s done", state.id);
+        } catch (IOException e) {
+            // The lease expires: the chunk is claimed again, its journaled pairs being skipped
+            logger.errorf("Error marking the chunk %s as done: %s", state.id, e.getMessage());
+        }
+    }
+
+    private void renewLeases() {
+        for (ChunkState state : owned.values()) {
+            Path lease = leasePath(state.id, state.generation);
+            try {
+                // Superseded by another instance, which deletes this generation afterwards
+                if (currentGeneration(state.id) == state.generation) {
+                    Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis()));
+                    continue;
+                }
+            } catch (IOException e) {
+                logger.debugf("Lease %s not renewed: %s", lease, e.getMessage());
+            }
+            lost(state);
+        }
+    }
+
+    /**
+     * The lease expired and was reclaimed, e.g. after a long pause of this instance: no more work item of
+     * the chunk is pulled, and the chunk is not marked done by this instance.
+     */
+    private synchronized void lost(ChunkState state) {
+        if (state.lost || !owned.containsKey(state.id)) {
+            return;
+        }
+        state.lost = true;
+        lost.incrementAndGet();
+        logger.warnf("### Lease of the chunk %s lost, its remaining work items are left to the other instances", state.id);
+        completeIfSettled(state);
+    }
+
+    /**
+     * The done marker holds the range of dates of the chunk: a chunk whose range grew since, e.g. a later
+     * END_DATE in the same month, is claimed again, the journals skipping the dates already written.
+     */
+    private boolean isDone(Workload.Chunk chunk) throws IOException {
+        Path marker = doneDir.resolve(chunkId(chunk));
+        if (!Files.exists(marker)) {
+            return false;
+        }
+        String[] range = Files.readString(marker, StandardCharsets.UTF_8).trim().split(",");
+        try {
+            return range.length == 2
+                && !LocalDate.parse(range[0], DATE_FORMAT).isAfter(workload.date(chunk.fromDay()))
+                && !LocalDate.parse(range[1], DATE_FORMAT).isBefore(workload.date(chunk.toDay()));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private void markDone(Workload.Chunk chunk, String id) throws IOException {
+        Path marker = doneDir.resolve(id);
+        Path tmp = doneDir.resolve(id + "." + owner + ".tmp");
+        String range = workload.date(chunk.fromDay()).format(DATE_FORMAT) + "," + workload.date(chunk.toDay()).format(DATE_FORMAT);
+        Files.writeString(tmp, range, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long heartbeatMillis() {
+        return Math.max(1000, ttlMillis / 3);
+    }
+
+    private Path leasePath(String id, int generation) {
+        return leaseDir.resolve(id + ".lease." + generation);
+    }
+
+    private static String readOwner(Path lease) throws IOException {
+        return Files.readString(lease, StandardCharsets.UTF_8).trim();
+    }
+
+    private String chunkId(Workload.Chunk chunk) {
+        return workload.isin(chunk.isinIndex()) + "_" + chunk.month();
+    }
+
+    private static String chunkId(String isin, LocalDate date) {
+        return isin + "_" + YearMonth.from(date);
+    }
+}
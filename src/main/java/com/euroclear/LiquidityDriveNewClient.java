@@ -1,19 +1,34 @@
 package com.euroclear;
 
+import com.euroclear.util.AdaptiveConcurrencyLimiter;
 import com.euroclear.util.ApiConfig;
+import com.euroclear.util.BusinessDayIndex;
+import com.euroclear.util.ByteBudgetQueue;
+import com.euroclear.util.ChannelWriter;
+import com.euroclear.util.CircuitBreaker;
+import com.euroclear.util.Credential;
+import com.euroclear.util.CredentialPool;
 import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.HedgePolicy;
+import com.euroclear.util.Metrics;
+import com.euroclear.util.PayloadBuffer;
+import com.euroclear.util.SettlementCalendar;
+import com.euroclear.util.Sharding;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpStatus;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.jboss.logging.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,33 +37,41 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static com.euroclear.util.ApiConfig.*;
-import static com.euroclear.util.Authentication.*;
-import static com.euroclear.util.Batch.BATCH_SIZE;
 import static com.euroclear.util.Calculation.eachBusinessDay;
 import static com.euroclear.util.Calculation.processingDuration;
 import static com.euroclear.util.CsvWriters.createMonthlyWriters;
 import static com.euroclear.util.ISIN.ISINS;
 import static com.euroclear.util.LiquidityRecord.populateHeaders;
+import static com.euroclear.util.Parsing.generateCSVfromBytes;
+import static com.euroclear.util.Parsing.generateCSVfromStream;
 
 public class LiquidityDriveNewClient {
     private static final Logger logger = Logger.getLogger(LiquidityDriveNewClient.class);
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(LiquidityDriveNewClient.class);
-    private static List<WorkItem> allWorkItems;
-    private static Collection<List<WorkItem>> batches;
     private static String[] isinsToProcess;
 
     private static final Set<Integer> LOGGABLE_ERROR_CODES = Set.of(
         HttpStatus.SC_NO_CONTENT,       // 204
         HttpStatus.SC_UNAUTHORIZED,     // 401
-        HttpStatus.SC_NOT_FOUND,        // 404
-        HttpStatus.SC_TOO_MANY_REQUESTS // 429
+        HttpStatus.SC_NOT_FOUND         // 404
     );
 
     public static boolean isDryRun = false;
+    // Local mock server of the dry runs
+    static String dryRunAddress = "http://localhost:8080";
+    static CredentialPool credentials;
+    static HedgePolicy hedging;
+    static CircuitBreaker circuitBreaker;
+    // Runs the hedged requests of the classic engine, each attempt blocking its own virtual thread
+    private static final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    static AdaptiveConcurrencyLimiter concurrencyLimiter;
+    static RetryScheduler retryScheduler;
+    static WatermarkStore watermarks;
+    static NegativeCache negativeCache;
+    static LeaseCoordinator leases;
+    static ResponseArchive archive;
 
     public static void main(String[] args) throws Exception {
         logger.info("####################################");
@@ -64,11 +87,30 @@ public class LiquidityDriveNewClient {
 
         if (isDryRun) {
             logger.infof("<<<<< RUNNING IN DRY-RUN MODE >>>>>");
-            logger.infof("### Connecting to http://localhost:8080. No authentication will be used.");
-        } else {
-            // Create the Microsoft ConfidentialClientApplication
-            createConfidentialClientApplication();
+            logger.infof("### Connecting to %s. No authentication will be used.", dryRunAddress);
+        }
+
+        // Credentials (Microsoft ConfidentialClientApplication, token cache, keystore, rate limiter) among which the requests are spread
+        CredentialPool credentialPool = CredentialPool.fromEnvironment();
+        credentials = credentialPool;
+
+        // Number of requests in flight adjusted to the 429/503 and latency signals of the server
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(MIN_IN_FLIGHT, INITIAL_IN_FLIGHT, MAX_IN_FLIGHT);
+        logger.infof("### Requests in flight: %d - %d, starting at %d", MIN_IN_FLIGHT, MAX_IN_FLIGHT, INITIAL_IN_FLIGHT);
+
+        // The requests are parked while the server is failing
+        if (CIRCUIT_BREAKER) {
+            circuitBreaker = new CircuitBreaker(CIRCUIT_WINDOW, CIRCUIT_FAILURE_RATE, CIRCUIT_SLOW_REQUEST_MS, CIRCUIT_OPEN_SECOND);
+            logger.infof("### Circuit breaker: %.0f%% of the last %d requests failed or slower than %d ms, parked for %d s",
+                CIRCUIT_FAILURE_RATE, CIRCUIT_WINDOW, CIRCUIT_SLOW_REQUEST_MS, CIRCUIT_OPEN_SECOND);
+        }
+
+        // The slowest requests are sent a second time, the first response being used
+        if (HEDGING) {
+            hedging = new HedgePolicy(HEDGE_PERCENTILE, HEDGE_BUDGET_PERCENT);
+            logger.infof("### Hedged requests after the p%.0f latency, at most %.1f%% of extra requests", HEDGE_PERCENTILE, HEDGE_BUDGET_PERCENT);
         }
+        Metrics.startReporter(METRICS_INTERVAL_SECOND);
 
         // Create the folder where the CSV files will be stored
         Path outDir = Paths.get(System.getProperty("user.dir"), "out");
@@ -86,23 +128,114 @@ public class LiquidityDriveNewClient {
 
         logger.infof("### Processing ISINS: %s", Arrays.toString(isinsToProcess));
 
-        allWorkItems = generateWorkload(isinsToProcess, start, end);
-        logger.infof("### Work items: %d", allWorkItems.size());
+        // Business days of the settlement calendars: no request is sent for a closing day
+        BusinessDayIndex calendar = BusinessDayIndex.of(SettlementCalendar.of(CALENDARS), start, end);
+        logger.infof("### Calendars: %s - %d business days", CALENDARS, calendar.count(start, end));
+
+        // The pairs are generated lazily from the ISINs and the business days
+        Workload workload = new Workload(isinsToProcess, eachBusinessDay(start, end, calendar).toList(), Workload.Priority.parse(SCHEDULE_PRIORITY));
+        if (Sharding.isSharded()) {
+            // Only the pairs hashing to the shard of this process; the state and output files are suffixed with the shard
+            logger.infof("### Shard %d of %d", SHARD_INDEX, SHARD_COUNT);
+            workload.skipIf((isin, date) -> !Sharding.includes(isin, date));
+        }
+
+        watermarks = new WatermarkStore(outDir.resolve(Sharding.fileName("watermarks.csv")));
+        if (INCREMENTAL) {
+            logger.info("### Incremental mode: fetching the business days after the watermark of each ISIN");
+            for (int i = 0; i < workload.isinCount(); i++) {
+                LocalDate watermark = watermarks.get(workload.isin(i));
+                if (watermark != null) {
+                    workload.restrict(i, watermark.plusDays(1), null);
+                }
+            }
+        }
+        logger.infof("### Work items: %d", workload.size());
+
+        // Skip the pairs already written by a previous run
+        CheckpointJournal journal = new CheckpointJournal(outDir.resolve(Sharding.fileName("checkpoint.journal")), start, end);
+        workload.skipIf(journal::isCompleted);
+        if (LEASE_DIR != null) {
+            // And the pairs written by the other instances
+            try (DirectoryStream<Path> others = Files.newDirectoryStream(outDir, Sharding.fileName("checkpoint.journal", "*"))) {
+                for (Path other : others) {
+                    if (!other.getFileName().toString().equals(Sharding.fileName("checkpoint.journal"))) {
+                        journal.include(other);
+                    }
+                }
+            }
+        }
+
+        // Skip the pairs known to be empty (204) or unknown (404)
+        NegativeCache emptyPairs = new NegativeCache(outDir.resolve(Sharding.fileName("negative-cache.csv")), NEGATIVE_CACHE_TTL_DAYS);
+        negativeCache = emptyPairs;
+        workload.skipIf(emptyPairs::contains);
+
+        if (PROBE_AVAILABILITY) {
+            // Trim the range of each ISIN to the dates where data is available
+            try (ExecutorService probeExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                AvailabilityProber prober = new AvailabilityProber(LiquidityDriveNewClient::probe, PROBE_MIN_WINDOW_DAYS);
+                prober.trimAll(workload, probeExecutor);
+            }
+            logger.infof("### Work items: %d (after the availability probes)", workload.size());
+        }
+
+        // The instances sharing LEASE_DIR claim the chunks of the workload one after the other
+        LeaseCoordinator coordinator = LEASE_DIR == null ? null : new LeaseCoordinator(workload, Paths.get(LEASE_DIR), INSTANCE_ID, LEASE_TTL_SECOND, previousOwner -> {
+            try {
+                journal.include(outDir.resolve(Sharding.fileName("checkpoint.journal", previousOwner)));
+            } catch (IOException e) {
+                logger.errorf("Error loading the journal of %s: %s", previousOwner, e.getMessage());
+            }
+        });
+        leases = coordinator;
+
+        // Last date of each ISIN, to move the watermarks at the end of the run
+        Map<String, LocalDate> lastDates = workload.lastDates();
+        // In incremental mode, only the months from the oldest date to fetch get a writer
+        LocalDate firstDate = Optional.ofNullable(workload.firstDate()).orElse(end);
 
         // --- 2. CREATE ERROR LOG WRITER ---
-        Path errorLogPath = outDir.resolve("error-log.csv");
-        try (CsvFileWriter errorWriter = new CsvFileWriter(errorLogPath)) {
+        Path errorLogPath = outDir.resolve(Sharding.fileName("error-log.csv"));
+        Path deadLetterPath = outDir.resolve(Sharding.fileName("dead-letter.csv"));
+        // Raw responses kept for a later replay
+        ResponseArchive responseArchive = ARCHIVE
+            ? new ResponseArchive(outDir.resolve("archive"), ARCHIVE_SEGMENT_MB * 1024 * 1024, ARCHIVE_BLOCK_KB * 1024)
+            : null;
+        archive = responseArchive;
+
+        try (journal;
+             emptyPairs;
+             responseArchive;
+             coordinator;
+             credentialPool;
+             // Closed before the clients of the credentials: waits for the hedged attempts which lost, already aborted
+             hedgeExecutor;
+             CsvFileWriter errorWriter = new CsvFileWriter(errorLogPath);
+             CsvFileWriter deadLetterWriter = new CsvFileWriter(deadLetterPath)) {
             if (Files.size(errorLogPath) == 0) {
                 errorWriter.writeLine("\"ISIN\",\"Date\",\"ErrorCode\"");
                 errorWriter.flush();
             }
+            if (Files.size(deadLetterPath) == 0) {
+                deadLetterWriter.writeLine("\"ISIN\",\"Date\",\"Attempts\",\"Reason\"");
+                deadLetterWriter.flush();
+            }
 
             // --- 3. PRE-CREATE CSV WRITERS ---
             // Initialize headers as needed for each CSV file
             populateHeaders();
 
             // Create the monthly securities csv files for the period
-            Map<String, CsvFileWriter> writers = createMonthlyWriters(start, end, outDir);
+            ChannelWriter.Policy outputPolicy = OUTPUT_DURABILITY == null ? null
+                : new ChannelWriter.Policy(OUTPUT_DURABILITY, OUTPUT_FORCE_MB * 1024 * 1024, OUTPUT_FORCE_MS);
+            if (outputPolicy != null) {
+                logger.infof("### Output through FileChannel, durability: %s", OUTPUT_DURABILITY);
+            }
+            Map<String, CsvFileWriter> writers = createMonthlyWriters(firstDate, end, outDir, Sharding.suffix(), outputPolicy);
+            // A writer thread per monthly file, which journals the rows once they are flushed. The rows not flushed
+            // yet are bounded by the budget of the work queue as well
+            OutputStage output = new OutputStage(writers, journal, OUTPUT_COMMIT_CHARS, OUTPUT_COMMIT_MS, QUEUE_MAX_MB * 1024 * 1024);
 
             // --- 4. SETUP PRODUCER-CONSUMER INFRASTRUCTURE ---
             // int producerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
@@ -110,152 +243,500 @@ public class LiquidityDriveNewClient {
             // logger.infof("### Number of producer threads: %d", producerThreads);
             ExecutorService producerExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-            BlockingQueue<QueueItem> workQueue = new LinkedBlockingQueue<>(10000); // Bounded queue
+            // Transient failures are retried on the same producer pool, with backoff
+            retryScheduler = new RetryScheduler(producerExecutor, deadLetterWriter, RETRY_MAX_ATTEMPTS, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS);
+
+            // Bounded by the bytes of the payloads, the producers waiting while the consumers are behind
+            BlockingQueue<QueueItem> workQueue = new ByteBudgetQueue<>(QUEUE_MAX_MB * 1024 * 1024, QueueItem::payloadBytes).withMetrics("queue");
+            logger.infof("### Work queue: %d MB of payloads", QUEUE_MAX_MB);
             int consumerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
             logger.infof("### Number of consumer threads: %d", consumerThreads);
 
             ExecutorService consumerExecutor = Executors.newFixedThreadPool(consumerThreads);
             CountDownLatch consumersLatch = new CountDownLatch(consumerThreads);
 
-            // --- 6. PARTITION WORKLOAD USING NATIVE JAVA AND START PRODUCERS ---
-            batches = IntStream.range(0, (allWorkItems.size() + BATCH_SIZE - 1) / BATCH_SIZE)
-                .mapToObj(i -> allWorkItems.subList(i * BATCH_SIZE, Math.min((i + 1) * BATCH_SIZE, allWorkItems.size())))
-                .collect(Collectors.toList());
-
-            logger.infof("### Number of batches calculated: %d", batches.size());
+            // --- 6. SCHEDULE THE WORKLOAD AND START PRODUCERS ---
+            Workload.Cursor cursor = coordinator == null ? workload.cursor() : coordinator.cursor();
+            WorkScheduler scheduler = new WorkScheduler(FETCH_WORKERS);
+            logger.infof("### Fetch workers: %d - priority: %s", FETCH_WORKERS, SCHEDULE_PRIORITY);
             logger.info("####################################");
 
-            try (CloseableHttpClient httpClient = isDryRun ? HttpClients.createDefault() : createHttpClient()) {
-
-                logger.infof("Submitting %d consumer tasks to the executor...", consumerThreads);
-                for (int i = 0; i < consumerThreads; i++) {
-                    consumerExecutor.submit(new CsvConsumer(workQueue, writers, consumersLatch));
-                }
-                logger.info("All consumer tasks submitted. Starting producers...");
-
-                List<CompletableFuture<Void>> producerFutures = batches.stream()
-                    .map(batch -> CompletableFuture.runAsync(() -> {
+            boolean completed = false;
+            logger.infof("Submitting %d consumer tasks to the executor...", consumerThreads);
+            for (int i = 0; i < consumerThreads; i++) {
+                consumerExecutor.submit(new CsvConsumer(workQueue, output, consumersLatch));
+            }
+            logger.info("All consumer tasks submitted. Starting producers...");
+
+            try {
+                if (ASYNC_FETCH_ENGINE.equalsIgnoreCase(FETCH_ENGINE)) {
+                    logger.info("### Fetch engine: async");
+                    // The async clients of the credentials are closed with the pool
+                    AsyncFetcher fetcher = new AsyncFetcher(credentials, workQueue, errorWriter, producerExecutor, concurrencyLimiter, hedging);
+                    retryScheduler.start(workItem -> {
+                        try {
+                            fetcher.fetch(workItem);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    fetcher.fetchAll(cursor);
+                    awaitRetries();
+                } else {
+                    retryScheduler.start(workItem -> {
                         try {
-                            processWorkBatch(batch, httpClient, workQueue, isDryRun, errorWriter);
+                            processWorkItem(workItem, workQueue, isDryRun, errorWriter);
                         } catch (Exception e) {
-                            logger.errorf("Error processing a batch: %s", e.getMessage());
+                            logger.errorf("Error processing a retry: %s", e.getMessage());
                         }
-                    }, producerExecutor))
-                    .toList();
-
-                CompletableFuture.allOf(producerFutures.toArray(new CompletableFuture[0])).join();
-
-                // Without using batches: this is too slooowww
-                /*
-                CompletableFuture<Void> processingFuture = CompletableFuture.runAsync(() -> {
-                    try {
-                        processWorkBatch(allWorkItems, httpClient, workQueue, isDryRun, errorWriter);
-                    } catch (Exception e) {
-                        logger.errorf("Error processing a batch: %s", e.getMessage());
-                    }
-                }, producerExecutor);
-                processingFuture.join();
-                */
+                    });
+
+                    scheduler.run(cursor,
+                        workItem -> processWorkItem(workItem, workQueue, isDryRun, errorWriter),
+                        producerExecutor);
+                    awaitRetries();
+                }
+
                 logger.infof("All producers have finished submitting work.");
+                completed = true;
             } catch (Exception e) {
                 logger.errorf("Error occurs during the processing: %s", e.getMessage());
                 e.printStackTrace();
             } finally {
                 // --- 7. SHUTDOWN ---
                 logger.infof("### Shutting down the producers ...");
+                retryScheduler.close();
                 producerExecutor.shutdown();
 
                 logger.infof("### Signaling consumers to shut down...");
                 for (int i = 0; i < consumerThreads; i++) {
-                    workQueue.put(new QueueItem("POISON_PILL", null, null));
+                    workQueue.put(QueueItem.POISON_PILL);
                 }
 
                 consumerExecutor.shutdown();
-                consumersLatch.await(5, TimeUnit.MINUTES);
+                if (!consumersLatch.await(5, TimeUnit.MINUTES)) {
+                    // Payloads may be left in the queue or in the consumers, never written
+                    logger.errorf("### The consumers did not finish in time, %d payloads left in the queue", workQueue.size());
+                    completed = false;
+                    consumerExecutor.shutdownNow();
+                }
 
-                writers.values().forEach(writer -> {
-                    try {
-                        writer.close();
-                    } catch (IOException e) {
-                        logger.error("Error closing writer", e);
-                    }
-                });
+                // Commits the last rows, before the journal is closed
+                output.close();
+
+                // The watermarks only move after a run which went through the whole workload. The coordinated
+                // instances rely on the done markers of the chunks instead
+                if (completed && coordinator == null) {
+                    watermarks.advance(lastDates);
+                    watermarks.save();
+                }
                 logger.info("####################################");
-                logger.infof("Generated %s requests to process.", allWorkItems.size());
-                logger.infof("Processed %d batches containing %d records", batches.size(), BATCH_SIZE);
+                logger.infof("Generated %s requests to process.", workload.size());
+                logger.infof("Processed by %d fetch workers", FETCH_WORKERS);
                 logger.infof("Number of ISIN processed: %d", isinsToProcess.length);
+                Metrics.stopReporter();
                 logger.info("####################################");
                 processingDuration(startTime);
             }
         } // Error writer is automatically closed here by try-with-resources
     }
 
-    private static List<WorkItem> generateWorkload(String[] isins, LocalDate start, LocalDate end) {
-        List<LocalDate> dates = eachBusinessDay(start, end, null).collect(Collectors.toList());
-        return Arrays.stream(isins)
-            .flatMap(isin -> dates.stream().map(date -> new WorkItem(isin, date)))
-            .collect(Collectors.toList());
+    private static void processWorkItem(WorkItem workItem, BlockingQueue<QueueItem> queue, boolean isDryRun, CsvFileWriter errorWriter) throws Exception {
+        CircuitBreaker.Permit permit = acquire();
+        Credential credential = null;
+        int statusCode = -1;
+        long latency = 0;
+        String retryAfter = null;
+        long sentAt = 0;
+        try {
+            credential = credentials.acquire();
+            HttpGet request = newRequest(workItem, credential);
+            sentAt = System.nanoTime();
+            Outcome outcome = hedging == null ? send(workItem, credential, request) : sendHedged(workItem, credential, request);
+            // The credential of the hedge when it answered first
+            credential = outcome.credential();
+            latency = outcome.respondedAt() - sentAt;
+            statusCode = outcome.statusCode();
+            retryAfter = outcome.retryAfter();
+            if (hedging != null) {
+                hedging.record(latency);
+            }
+            handleResponse(workItem, statusCode, outcome.payload(), queue, errorWriter);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (sentAt != 0) {
+                latency = System.nanoTime() - sentAt;
+            }
+            logger.errorf("HTTP request failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+            retryScheduler.schedule(workItem, String.valueOf(e.getMessage()));
+        } finally {
+            if (sentAt == 0) {
+                // Interrupted while waiting for a credential, or no token: nothing was sent
+                cancel(permit);
+            } else {
+                release(permit, credential, statusCode, latency, retryAfter);
+            }
+        }
     }
 
-    private static void processWorkBatch(List<WorkItem> batch, CloseableHttpClient httpClient, BlockingQueue<QueueItem> queue, boolean isDryRun, CsvFileWriter errorWriter) throws Exception {
-        logger.infof("### Processing %d work items...", batch.size());
+    /**
+     * Response of a request of the classic engine, its body being already read.
+     */
+    private record Outcome(Credential credential, int statusCode, String retryAfter, QueueItem payload, long respondedAt) {}
+
+    private static Outcome send(WorkItem workItem, Credential credential, HttpGet request) throws Exception {
+        try (CloseableHttpResponse response = credential.httpClient().execute(request)) {
+            long respondedAt = System.nanoTime();
+            int statusCode = response.getCode();
+            QueueItem payload = null;
+            if (statusCode == HttpStatus.SC_OK && response.getEntity() != null) {
+                payload = readPayload(workItem, response.getEntity().getContent());
+            }
+            return new Outcome(credential, statusCode, headerValue(response, HttpHeaders.RETRY_AFTER), payload, respondedAt);
+        }
+    }
 
-        for (WorkItem workItem : batch) {
+    /**
+     * Sends the request, and a second one if the first is still unanswered after the hedge delay and the hedging
+     * budget allows it. The first response is used and the other request is aborted.
+     */
+    private static Outcome sendHedged(WorkItem workItem, Credential credential, HttpGet request) throws Exception {
+        CompletableFuture<Outcome> first = sendAsync(workItem, credential, request);
+        HttpGet hedgeRequest = null;
+        try {
+            try {
+                return first.get(hedging.delayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Still unanswered: hedge it below
+            }
 
-            String apiToken = getAccessTokenForCurrentThread();
+            Credential hedgeCredential = null;
+            if (hedging.tryHedge()) {
+                hedgeCredential = credentials.tryAcquire();
+                if (hedgeCredential == null) {
+                    // No quota left right now: a hedge would only delay the other requests
+                    hedging.refund();
+                }
+            }
+            if (hedgeCredential == null) {
+                return first.get();
+            }
 
-            // -------------------------------------------------
-            String requestUrl;
-            String dateString = workItem.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            String encodedIsin = URLEncoder.encode(workItem.isin(), StandardCharsets.UTF_8);
+            logger.debugf("Hedging the request of ISIN %s on %s", workItem.isin(), workItem.date());
+            hedgeRequest = newRequest(workItem, hedgeCredential);
+            CompletableFuture<Outcome> hedge = sendAsync(workItem, hedgeCredential, hedgeRequest);
+            Outcome outcome = firstOf(first, hedge).get();
+            if (hedge.isDone() && !hedge.isCompletedExceptionally() && hedge.join() == outcome) {
+                hedging.won();
+            }
+            return outcome;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            // Abort the request which lost, if still running
+            request.cancel();
+            if (hedgeRequest != null) {
+                hedgeRequest.cancel();
+            }
+        }
+    }
 
-            if (isDryRun) {
-                // Construct URL for the local mock server
-                requestUrl = String.format("http://localhost:8080/liquidity?isin=%s&date=%s", encodedIsin, dateString);
+    private static CompletableFuture<Outcome> sendAsync(WorkItem workItem, Credential credential, HttpGet request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(workItem, credential, request);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, hedgeExecutor);
+    }
+
+    /**
+     * @return the first outcome of the two, or the failure of the last one when both failed
+     */
+    private static CompletableFuture<Outcome> firstOf(CompletableFuture<Outcome> a, CompletableFuture<Outcome> b) {
+        CompletableFuture<Outcome> first = new CompletableFuture<>();
+        a.whenComplete((outcome, error) -> {
+            if (error == null) {
+                first.complete(outcome);
+            } else if (b.isCompletedExceptionally()) {
+                first.completeExceptionally(error);
+            }
+        });
+        b.whenComplete((outcome, error) -> {
+            if (error == null) {
+                first.complete(outcome);
+            } else if (a.isCompletedExceptionally()) {
+                first.completeExceptionally(error);
+            }
+        });
+        return first;
+    }
+
+    private static HttpGet newRequest(WorkItem workItem, Credential credential) {
+        HttpGet request = new HttpGet(requestUrl(workItem));
+
+        // Only add headers if not in dry-run mode
+        if (!isDryRun) {
+            request.setHeader("Authorization", "Bearer " + credential.getAccessToken());
+            request.setHeader("Ocp-Apim-Subscription-Key", credential.getApiKey());
+            request.setHeader("Accept", "application/json");
+        }
+        return request;
+    }
+
+    /**
+     * Response of a probe, its body only read to tell a blank 200 from a 200 with data.
+     */
+    private record ProbeResponse(int statusCode, String retryAfter, boolean blank) {}
+
+    /**
+     * Sends the request of a work item for the availability probes. The body is not converted, the work item
+     * being fetched again by the sweep if it falls inside the window; the 204 and 404 go to the negative cache.
+     * Only a 404 is outside the window, a day without data (204, empty 200) being a hole inside it.
+     */
+    private static AvailabilityProber.Availability probe(WorkItem workItem) {
+        Credential credential = null;
+        int statusCode = -1;
+        long sentAt = 0;
+        String retryAfter = null;
+        CircuitBreaker.Permit permit;
+        try {
+            permit = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return AvailabilityProber.Availability.UNKNOWN;
+        }
+        try {
+            credential = credentials.acquire();
+            HttpGet request = newRequest(workItem, credential);
+            sentAt = System.nanoTime();
+            ProbeResponse response = credential.httpClient().execute(request, r -> {
+                boolean blank = true;
+                if (r.getCode() == HttpStatus.SC_OK && r.getEntity() != null) {
+                    PayloadBuffer body = PayloadBuffer.acquire().readFrom(r.getEntity().getContent());
+                    blank = body.isBlank();
+                    body.release();
+                }
+                return new ProbeResponse(r.getCode(), headerValue(r, HttpHeaders.RETRY_AFTER), blank);
+            });
+            statusCode = response.statusCode();
+            retryAfter = response.retryAfter();
+            if (statusCode == HttpStatus.SC_OK) {
+                return response.blank() ? AvailabilityProber.Availability.EMPTY : AvailabilityProber.Availability.AVAILABLE;
+            }
+            if (statusCode == HttpStatus.SC_NO_CONTENT || statusCode == HttpStatus.SC_NOT_FOUND) {
+                negativeCache.record(workItem.isin(), workItem.date(), statusCode);
+                return statusCode == HttpStatus.SC_NOT_FOUND
+                    ? AvailabilityProber.Availability.UNAVAILABLE
+                    : AvailabilityProber.Availability.EMPTY;
+            }
+            return AvailabilityProber.Availability.UNKNOWN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return AvailabilityProber.Availability.UNKNOWN;
+        } catch (Exception e) {
+            logger.errorf("Probe failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+            return AvailabilityProber.Availability.UNKNOWN;
+        } finally {
+            if (sentAt == 0) {
+                cancel(permit);
             } else {
-                // Construct URL for the production server
-                String endpoint = String.format(ApiConfig.SINGLE_ENDPOINT_FMT, encodedIsin, dateString);
-                requestUrl = ApiConfig.LIQUIDITY_DRIVE_ADDRESS + endpoint;
+                release(permit, credential, statusCode, System.nanoTime() - sentAt, retryAfter);
             }
+        }
+    }
+
+    /**
+     * Waits until the circuit breaker lets the requests through, then for a permit of the concurrency limiter.
+     * Each call must be followed by one call to release(), or to cancel() when the request was not sent.
+     * @return the permit of the circuit breaker, or null without circuit breaker
+     */
+    static CircuitBreaker.Permit acquire() throws InterruptedException {
+        CircuitBreaker.Permit permit = circuitBreaker == null ? null : circuitBreaker.acquire();
+        try {
+            concurrencyLimiter.acquire();
+        } catch (InterruptedException e) {
+            if (permit != null) {
+                circuitBreaker.cancel(permit);
+            }
+            throw e;
+        }
+        return permit;
+    }
+
+    /**
+     * Hands back the permits taken by acquire() for a request which was not sent, without any outcome: neither the
+     * circuit breaker nor the concurrency limiter hear of it.
+     */
+    static void cancel(CircuitBreaker.Permit permit) {
+        if (permit != null) {
+            circuitBreaker.cancel(permit);
+        }
+        concurrencyLimiter.release();
+    }
+
+    /**
+     * Releases the permit of the concurrency limiter once the response of a request is handled, and feeds the circuit
+     * breaker. A 429 of one credential among several only pauses this credential, without slowing down the requests of the others.
+     */
+    static void release(CircuitBreaker.Permit permit, Credential credential, int statusCode, long latency, String retryAfter) {
+        if (permit != null) {
+            circuitBreaker.record(permit, statusCode, latency);
+        }
+        if (credential != null && credentials.absorbs(credential, statusCode, retryAfter)) {
+            concurrencyLimiter.release();
+        } else {
+            concurrencyLimiter.release(statusCode, latency, retryAfter);
+        }
+    }
+
+    /**
+     * Waits until the retries are over. A retry being scheduled before its request releases
+     * the concurrency limiter, the run is complete once both are idle.
+     */
+    private static void awaitRetries() throws InterruptedException {
+        do {
+            retryScheduler.awaitIdle();
+            concurrencyLimiter.awaitIdle();
+        } while (retryScheduler.getPending() > 0);
+    }
+
+    /**
+     * Records a work item which did not get a final answer, see {@link WatermarkStore}.
+     */
+    static void recordFailure(String isin, LocalDate date) {
+        if (watermarks != null) {
+            watermarks.recordFailure(isin, date);
+        }
+    }
+
+    /**
+     * Called once the outcome of a work item is final (rows written, no content, failure), to complete its leased chunk.
+     */
+    static void settled(String isin, LocalDate date) {
+        if (leases != null) {
+            leases.settled(isin, date);
+        }
+    }
+
+    static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Builds the request URL of a work item, either for the local mock server or for the production server.
+     */
+    static String requestUrl(WorkItem workItem) {
+        String dateString = workItem.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        String encodedIsin = URLEncoder.encode(workItem.isin(), StandardCharsets.UTF_8);
 
-            HttpGet request = new HttpGet(requestUrl);
+        if (isDryRun) {
+            // Construct URL for the local mock server
+            return String.format("%s/liquidity?isin=%s&date=%s", dryRunAddress, encodedIsin, dateString);
+        }
+        // Construct URL for the production server
+        String endpoint = String.format(ApiConfig.SINGLE_ENDPOINT_FMT, encodedIsin, dateString);
+        return ApiConfig.LIQUIDITY_DRIVE_ADDRESS + endpoint;
+    }
 
-            // Only add headers if not in dry-run mode
-            if (!isDryRun) {
-                request.setHeader("Authorization", "Bearer " + apiToken);
-                request.setHeader("Ocp-Apim-Subscription-Key", API_KEY);
-                request.setHeader("Accept", "application/json");
+    /**
+     * Reads a 200 body into the item queued for the consumers. With STREAMING_CONVERSION the CSV rows
+     * are generated straight from the stream, otherwise the bytes of the JSON are kept for the consumers
+     * in a pooled buffer. The body is read first when it is archived.
+     * @return null when the body is empty
+     */
+    static QueueItem readPayload(WorkItem workItem, InputStream body) throws IOException, InterruptedException {
+        if (STREAMING_CONVERSION && archive == null) {
+            StringBuilder csv = new StringBuilder(8192);
+            try {
+                // A read error of the stream is thrown to the caller, which retries the pair
+                return generateCSVfromStream(body, workItem.isin(), workItem.date(), csv)
+                    ? new QueueItem(null, workItem.isin(), workItem.date(), csv)
+                    : null;
+            } catch (JsonProcessingException e) {
+                invalidJson(workItem, e);
+                return null;
             }
+        }
+        return readPayload(workItem, PayloadBuffer.acquire().readFrom(body));
+    }
 
-            logger.debugf("### Sleeping thread - %s for: %d milli seconds",Thread.currentThread().getName(), SLEEP_TIME_MS);
-            Thread.sleep(SLEEP_TIME_MS);
+    /**
+     * Same as above for a body already read.
+     */
+    static QueueItem readPayload(WorkItem workItem, PayloadBuffer body) throws InterruptedException {
+        if (archive != null && !body.isBlank()) {
+            archive.append(workItem.isin(), workItem.date(), body);
+        }
+        if (STREAMING_CONVERSION) {
+            StringBuilder csv = new StringBuilder(8192);
+            try {
+                return generateCSVfromBytes(body, workItem.isin(), workItem.date(), csv)
+                    ? new QueueItem(null, workItem.isin(), workItem.date(), csv)
+                    : null;
+            } catch (JsonProcessingException e) {
+                invalidJson(workItem, e);
+                return null;
+            } finally {
+                body.release();
+            }
+        }
+        if (body.isBlank()) {
+            body.release();
+            return null;
+        }
+        return new QueueItem(body, workItem.isin(), workItem.date());
+    }
 
-            try (CloseableHttpResponse response = httpClient.execute(request)) {
-                int statusCode = response.getCode();
-                if (statusCode == HttpStatus.SC_OK && response.getEntity() != null) {
-                    String bodyText = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    if (bodyText != null && !bodyText.trim().isEmpty()) {
-                        queue.put(new QueueItem(bodyText, workItem.isin(), workItem.date()));
-                    }
-                } else {
-                    // --- NEW ERROR LOGGING LOGIC ---
-                    if (LOGGABLE_ERROR_CODES.contains(statusCode)) {
-                        String errorRow = String.format("\"%s\",\"%s\",%d",
-                            workItem.isin(),
-                            workItem.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                            statusCode);
-
-                        // Synchronize on the writer to ensure thread-safe writes
-                        synchronized (errorWriter) {
-                            errorWriter.writeLine(errorRow);
-                            errorWriter.flush();
-                        }
-                    }
+    /**
+     * A 200 whose body is not valid JSON: retrying would most likely get the same body, the pair is recorded as
+     * failed so that the watermarks do not move over it, and settled by handleResponse as it has no payload.
+     */
+    private static void invalidJson(WorkItem workItem, JsonProcessingException e) {
+        logger.errorf("Error processing JSON for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getOriginalMessage());
+        recordFailure(workItem.isin(), workItem.date());
+    }
+
+    /**
+     * Common handling of a response, whatever the fetch engine: a 200 body is queued for the consumers,
+     * a 429 or a 5xx is retried later, the loggable error codes are appended to the error log.
+     */
+    static void handleResponse(WorkItem workItem, int statusCode, QueueItem payload, BlockingQueue<QueueItem> queue, CsvFileWriter errorWriter) throws InterruptedException, IOException {
+        if (statusCode == HttpStatus.SC_OK) {
+            if (payload != null) {
+                queue.put(payload);
+            } else {
+                settled(workItem.isin(), workItem.date());
+            }
+        } else if (statusCode == HttpStatus.SC_TOO_MANY_REQUESTS || statusCode >= HttpStatus.SC_SERVER_ERROR) {
+            retryScheduler.schedule(workItem, "status " + statusCode);
+        } else {
+            // --- NEW ERROR LOGGING LOGIC ---
+            if (statusCode != HttpStatus.SC_NO_CONTENT && statusCode != HttpStatus.SC_NOT_FOUND) {
+                // Not a final answer: the watermark of the ISIN must not move over this date
+                recordFailure(workItem.isin(), workItem.date());
+            }
+            if (negativeCache != null) {
+                negativeCache.record(workItem.isin(), workItem.date(), statusCode);
+            }
+            if (LOGGABLE_ERROR_CODES.contains(statusCode)) {
+                String errorRow = String.format("\"%s\",\"%s\",%d",
+                    workItem.isin(),
+                    workItem.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                    statusCode);
+
+                // Synchronize on the writer to ensure thread-safe writes
+                synchronized (errorWriter) {
+                    errorWriter.writeLine(errorRow);
+                    errorWriter.flush();
                 }
-                logger.infof("Received status [%d] for ISIN %s on %s", statusCode, workItem.isin(), workItem.date());
-            } catch (Exception e) {
-                logger.errorf("HTTP request failed for ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
             }
+            settled(workItem.isin(), workItem.date());
         }
+        logger.infof("Received status [%d] for ISIN %s on %s", statusCode, workItem.isin(), workItem.date());
     }
 }
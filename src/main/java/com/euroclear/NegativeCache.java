@@ -0,0 +1,128 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.LongHashSet;
+import com.euroclear.util.Metrics;
+import org.apache.hc.core5.http.HttpStatus;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of the (ISIN, date) pairs answered with a 204 or a 404, which are not requested again.
+ * <ul>
+ *     <li>a 404 is permanent: the ISIN is unknown (matured or not issued yet) on that date</li>
+ *     <li>a 204 for a date older than ttlDays when received is permanent too, the data of a past date does not change</li>
+ *     <li>a 204 for a recent date expires ttlDays after being received, as the data may still be published</li>
+ * </ul>
+ * The file holds "ISIN,yyyy-MM-dd,status,expiry" lines, the expiry being empty for the permanent entries.
+ * In memory each live pair is a long packing the id of the ISIN (high 32 bits) and the epoch day of the date (low 32 bits).
+ */
+public class NegativeCache implements Closeable {
+    private static final Logger logger = Logger.getLogger(NegativeCache.class);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final long ttlDays;
+    private final LocalDate today;
+    private final Map<String, Integer> isinIds = new HashMap<>();
+    private final LongHashSet pairs = new LongHashSet(1024);
+    private final CsvFileWriter writer;
+
+    public NegativeCache(Path path, long ttlDays) throws IOException {
+        this.ttlDays = ttlDays;
+        this.today = LocalDate.now();
+        if (Files.exists(path)) {
+            load(path);
+        }
+        this.writer = new CsvFileWriter(path);
+        logger.infof("### Negative cache %s: %d pairs", path, pairs.size());
+
+        Metrics.gauge("negativeCache.pairs", this::size);
+    }
+
+    public synchronized boolean contains(String isin, LocalDate date) {
+        Integer id = isinIds.get(isin);
+        return id != null && pairs.contains(pack(id, date));
+    }
+
+    /**
+     * Records a 204 or a 404 answer. The other status codes are ignored.
+     */
+    public synchronized void record(String isin, LocalDate date, int statusCode) throws IOException {
+        if (statusCode != HttpStatus.SC_NO_CONTENT && statusCode != HttpStatus.SC_NOT_FOUND) {
+            return;
+        }
+        if (!pairs.add(pack(id(isin), date))) {
+            return;
+        }
+        LocalDate expiry = statusCode == HttpStatus.SC_NO_CONTENT && date.isAfter(today.minusDays(ttlDays))
+            ? today.plusDays(ttlDays)
+            : null;
+        writer.writeLine(isin + "," + date.format(DATE_FORMAT) + "," + statusCode + "," + (expiry == null ? "" : expiry.format(DATE_FORMAT)));
+        writer.flush();
+    }
+
+    public synchronized int size() {
+        return pairs.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private int id(String isin) {
+        return isinIds.computeIfAbsent(isin, k -> isinIds.size() + 1);
+    }
+
+    private static long pack(int isinId, LocalDate date) {
+        return ((long) isinId << 32) | (date.toEpochDay() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Loads the live entries. The file is rewritten without the expired ones, if any.
+     */
+    private void load(Path path) throws IOException {
+        List<String> live = new ArrayList<>();
+        int expired = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",", -1);
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    if (!fields[3].isEmpty() && LocalDate.parse(fields[3], DATE_FORMAT).isBefore(today)) {
+                        expired++;
+                        continue;
+                    }
+                    if (pairs.add(pack(id(fields[0]), LocalDate.parse(fields[1], DATE_FORMAT)))) {
+                        live.add(line);
+                    }
+                } catch (DateTimeParseException e) {
+                    logger.debugf("Ignoring the invalid negative cache line: %s", line);
+                }
+            }
+        }
+        if (expired > 0) {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, live, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.infof("### Negative cache: %d expired pairs removed", expired);
+        }
+    }
+}
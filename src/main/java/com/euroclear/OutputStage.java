@@ -0,0 +1,232 @@
+package com.euroclear;
+
+import com.euroclear.util.ByteBudget;
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.Metrics;
+import com.euroclear.util.MpscRingBuffer;
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.euroclear.LiquidityDriveNewClient.recordFailure;
+import static com.euroclear.LiquidityDriveNewClient.settled;
+
+/**
+ * Output of the CSV rows: one writer thread per monthly file, the only one writing to it, started by the first rows
+ * of the month so that the months without rows do not hold a thread.
+ * The consumers hand over blocks of encoded rows through a lock-free ring buffer and go on parsing; they never wait on
+ * the file, unless its ring buffer is full or the rows not committed yet exceed the byte budget of the stage, which
+ * bounds the heap held by the rows downstream of the work queue. The writer group-commits the blocks: the file is
+ * flushed once commitChars are written or commitMillis after the first block not flushed, and only then are the pairs
+ * of the blocks journaled and settled, and their bytes released.
+ */
+public class OutputStage implements Closeable {
+    private static final Logger logger = Logger.getLogger(OutputStage.class);
+
+    private static final int RING_CAPACITY = 1024;
+    private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Rows of a batch of work items for one month.
+     */
+    private record Block(CharSequence rows, List<QueueItem> items, long bytes) {}
+
+    private final Map<String, CsvFileWriter> files;
+    private final ConcurrentHashMap<String, MonthWriter> monthWriters = new ConcurrentHashMap<>();
+    private final CheckpointJournal journal;
+    private final long commitChars;
+    private final long commitNanos;
+    private final ByteBudget pending;
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong fullRingWaits = new AtomicLong();
+
+    /**
+     * @param writers monthly files by month (yyyy-MM), closed with the stage
+     * @param maxPendingBytes budget of the rows submitted and not committed yet
+     */
+    public OutputStage(Map<String, CsvFileWriter> writers, CheckpointJournal journal, long commitChars, long commitMillis, long maxPendingBytes) {
+        this.journal = journal;
+        this.commitChars = commitChars;
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(commitMillis);
+        this.pending = new ByteBudget(maxPendingBytes).withMetrics("output.pending");
+        this.files = writers;
+
+        Metrics.gauge("output.commits", commits::get);
+        Metrics.gauge("output.fullRingWaits", fullRingWaits::get);
+        Metrics.gauge("output.pendingBlocks", () -> monthWriters.values().stream().mapToInt(writer -> writer.ring.size()).sum());
+    }
+
+    /**
+     * Hands the rows of work items over to the writer of their month, waiting while the budget of the rows not
+     * committed yet is spent. The rows must not be modified afterwards.
+     * @return false when there is no file for the month
+     */
+    public boolean submit(String month, CharSequence rows, List<QueueItem> items) throws InterruptedException {
+        CsvFileWriter file = files.get(month);
+        if (file == null) {
+            return false;
+        }
+        MonthWriter writer = monthWriters.computeIfAbsent(month, m -> new MonthWriter(m, file));
+        long bytes = QueueItem.rowBytes(rows);
+        pending.reserve(bytes);
+        try {
+            writer.submit(new Block(rows, items, bytes));
+        } catch (InterruptedException e) {
+            pending.release(bytes);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Writes and commits the blocks still in the ring buffers, then closes the files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (MonthWriter writer : monthWriters.values()) {
+            writer.stop();
+        }
+        for (MonthWriter writer : monthWriters.values()) {
+            writer.join();
+        }
+        for (CsvFileWriter file : files.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.error("Error closing writer", e);
+            }
+        }
+    }
+
+    private final class MonthWriter {
+        private final String month;
+        private final CsvFileWriter file;
+        private final MpscRingBuffer<Block> ring = new MpscRingBuffer<>(RING_CAPACITY);
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean sleeping;
+
+        // Only used by the writer thread
+        private final List<Block> uncommitted = new ArrayList<>();
+        private long uncommittedChars;
+        private long firstUncommittedNanos;
+
+        private MonthWriter(String month, CsvFileWriter file) {
+            this.month = month;
+            this.file = file;
+            this.thread = new Thread(this::run, "MonthWriter-" + month);
+            this.thread.start();
+        }
+
+        private void submit(Block block) throws InterruptedException {
+            while (!ring.offer(block)) {
+                // The writer is behind: wait for it to free slots
+                fullRingWaits.incrementAndGet();
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(FULL_RING_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void run() {
+            while (running || !ring.isEmpty()) {
+                Block block = ring.poll();
+                if (block != null) {
+                    write(block);
+                    if (uncommittedChars >= commitChars) {
+                        commit();
+                    }
+                    continue;
+                }
+                long sinceFirst = System.nanoTime() - firstUncommittedNanos;
+                if (!uncommitted.isEmpty() && sinceFirst >= commitNanos) {
+                    commit();
+                    continue;
+                }
+                sleeping = true;
+                // Checked again after announcing the sleep, so that a block submitted meanwhile is not left waiting
+                if (ring.isEmpty() && running) {
+                    LockSupport.parkNanos(uncommitted.isEmpty() ? commitNanos : commitNanos - sinceFirst);
+                }
+                sleeping = false;
+            }
+            commit();
+        }
+
+        private void write(Block block) {
+            try {
+                file.write(block.rows());
+                if (uncommitted.isEmpty()) {
+                    firstUncommittedNanos = System.nanoTime();
+                }
+                uncommitted.add(block);
+                uncommittedChars += block.rows().length();
+            } catch (IOException e) {
+                logger.errorf("Error writing to file for month %s: %s", month, e.getMessage());
+                failed(block);
+                pending.release(block.bytes());
+            }
+        }
+
+        /**
+         * Flushes the file, then journals and settles the pairs of the blocks written since the last commit.
+         */
+        private void commit() {
+            if (uncommitted.isEmpty()) {
+                return;
+            }
+            try {
+                file.flush();
+                commits.incrementAndGet();
+                for (Block block : uncommitted) {
+                    // The pairs are journaled only once their rows are flushed
+                    journal.markCompleted(block.items());
+                    for (QueueItem item : block.items()) {
+                        settled(item.isin(), item.date());
+                    }
+                }
+            } catch (IOException e) {
+                logger.errorf("Error writing to file for month %s: %s", month, e.getMessage());
+                uncommitted.forEach(this::failed);
+            }
+            for (Block block : uncommitted) {
+                pending.release(block.bytes());
+            }
+            uncommitted.clear();
+            uncommittedChars = 0;
+        }
+
+        private void failed(Block block) {
+            for (QueueItem item : block.items()) {
+                recordFailure(item.isin(), item.date());
+                settled(item.isin(), item.date());
+            }
+        }
+
+        private void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+
+        private void join() {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
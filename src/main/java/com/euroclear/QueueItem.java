@@ -1,9 +1,40 @@
 package com.euroclear;
 
+import com.euroclear.util.PayloadBuffer;
+
 import java.time.LocalDate;
 
 /**
  * Represents a successful result to be passed from Producers to Consumers.
- * This is an immutable data carrier.
+ * This is an immutable data carrier: either the JSON payload as its UTF-8 bytes, or the CSV rows
+ * already converted from the response stream by the producer.
  */
-public record QueueItem(String json, String isin, LocalDate date){}
\ No newline at end of file
+public record QueueItem(PayloadBuffer json, String isin, LocalDate date, CharSequence csv){
+    /**
+     * Signals a consumer to stop.
+     */
+    public static final QueueItem POISON_PILL = new QueueItem((PayloadBuffer) null, null, null, null);
+
+    public QueueItem(PayloadBuffer json, String isin, LocalDate date) {
+        this(json, isin, date, null);
+    }
+
+    public QueueItem(String json, String isin, LocalDate date) {
+        this(PayloadBuffer.of(json), isin, date, null);
+    }
+
+    /**
+     * Approximate bytes of the payload on the heap: the whole array of the JSON, which may be much larger than the
+     * body in a pooled buffer, and one byte per character of the CSV rows, up to the capacity of a StringBuilder.
+     */
+    public long payloadBytes() {
+        return (json == null ? 0 : json.capacity()) + (csv == null ? 0 : rowBytes(csv));
+    }
+
+    /**
+     * Approximate bytes of CSV rows on the heap.
+     */
+    static long rowBytes(CharSequence rows) {
+        return rows instanceof StringBuilder builder ? builder.capacity() : rows.length();
+    }
+}
@@ -0,0 +1,471 @@
+package com.euroclear;
+
+import com.euroclear.util.Metrics;
+import com.euroclear.util.MpscRingBuffer;
+import com.euroclear.util.PayloadBuffer;
+import com.euroclear.util.Sharding;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of the raw 200 responses, so that the CSV files can be generated again from the local disk
+ * (see ArchiveReplay) when the extracted fields change, instead of fetching everything again.
+ * <p>
+ * The producers hand the responses over to a single archive thread through a lock-free ring buffer. The thread
+ * appends them, as length-prefixed records keyed by (ISIN, date), to a block which is compressed with Deflate and
+ * written sequentially to the current segment once it holds blockBytes, or after FLUSH_MILLIS without a new response.
+ * <ul>
+ *     <li>segment file "segment-000001.dat": blocks of [magic][uncompressed length][compressed length][deflated records],
+ *     a record being [ISIN (writeUTF)][epoch day][body length][body]</li>
+ *     <li>index file "segment-000001.idx": one [ISIN (writeUTF)][epoch day][block offset][record offset in the block]
+ *     entry per record, written once its block is written, for the random lookups</li>
+ * </ul>
+ * A block which fails to be written is cut from its segment; a block written but not indexed yet when the process
+ * stops is found again by index(), which reads the end of the segments after their last indexed block.
+ * A run starts a new segment, and a segment is closed once it holds segmentBytes. A pair fetched again is archived
+ * again: the last record of a pair is the one of the index. The segments of a shard or of a coordinated instance
+ * carry its suffix, so that the processes never write the same files.
+ */
+public class ResponseArchive implements Closeable {
+    private static final Logger logger = Logger.getLogger(ResponseArchive.class);
+
+    private static final int BLOCK_MAGIC = 0x4C444152;
+    private static final int RING_CAPACITY = 1024;
+    private static final long FLUSH_MILLIS = 1000;
+    private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)(.*)\\.dat");
+
+    /**
+     * Pair of a record.
+     */
+    public record Key(String isin, LocalDate date) {}
+
+    /**
+     * Position of a record: the block at blockOffset of the segment, at recordOffset once the block is inflated.
+     */
+    public record Location(Path segment, long blockOffset, int recordOffset) {}
+
+    public record Entry(Key key, Location location, PayloadBuffer body) {}
+
+    private record Response(String isin, LocalDate date, byte[] body) {}
+
+    private record IndexEntry(String isin, LocalDate date, int recordOffset) {}
+
+    private record Block(byte[] records, int compressedLength) {}
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int blockBytes;
+    private final MpscRingBuffer<Response> ring = new MpscRingBuffer<>(RING_CAPACITY);
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+
+    // Only used by the archive thread
+    private final BlockBuffer block = new BlockBuffer();
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final List<IndexEntry> blockEntries = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[64 * 1024];
+    private int segmentNumber;
+    private FileChannel segment;
+    private DataOutputStream index;
+    private long lastAppendNanos;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong fullRingWaits = new AtomicLong();
+
+    /**
+     * @param segmentBytes size after which a segment is closed and a new one started
+     * @param blockBytes uncompressed size of the records compressed together
+     */
+    public ResponseArchive(Path dir, long segmentBytes, int blockBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.blockBytes = blockBytes;
+        Files.createDirectories(dir);
+        this.segmentNumber = lastSegmentNumber(dir, Sharding.suffix());
+        openSegment();
+        logger.infof("### Response archive %s: segment %s", dir, segmentName(segmentNumber, ".dat"));
+
+        Metrics.gauge("archive.records", records::get);
+        Metrics.gauge("archive.rawMB", () -> rawBytes.get() / (1024 * 1024));
+        Metrics.gauge("archive.compressedMB", () -> compressedBytes.get() / (1024 * 1024));
+        Metrics.gauge("archive.fullRingWaits", fullRingWaits::get);
+
+        this.thread = new Thread(this::run, "ResponseArchive");
+        this.thread.start();
+    }
+
+    /**
+     * Archives a 200 response. The bytes are copied: the buffer can be released or reused afterwards.
+     */
+    public void append(String isin, LocalDate date, PayloadBuffer body) throws InterruptedException {
+        if (!running) {
+            logger.warnf("Archive closed, response of ISIN %s on %s not archived", isin, date);
+            return;
+        }
+        Response response = new Response(isin, date, Arrays.copyOf(body.array(), body.length()));
+        while (!ring.offer(response)) {
+            // The archive thread is behind: wait for it to free slots
+            fullRingWaits.incrementAndGet();
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(FULL_RING_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+        while (running || !ring.isEmpty()) {
+            Response response = ring.poll();
+            if (response != null) {
+                add(response);
+                continue;
+            }
+            long idle = System.nanoTime() - lastAppendNanos;
+            if (block.size() > 0 && idle >= flushNanos) {
+                writeBlock();
+                continue;
+            }
+            sleeping = true;
+            // Checked again after announcing the sleep, so that a response archived meanwhile is not left waiting
+            if (ring.isEmpty() && running) {
+                LockSupport.parkNanos(block.size() > 0 ? flushNanos - idle : flushNanos);
+            }
+            sleeping = false;
+        }
+        writeBlock();
+    }
+
+    private void add(Response response) {
+        try {
+            blockEntries.add(new IndexEntry(response.isin(), response.date(), block.size()));
+            blockOut.writeUTF(response.isin());
+            blockOut.writeInt((int) response.date().toEpochDay());
+            blockOut.writeInt(response.body().length);
+            blockOut.write(response.body());
+            records.incrementAndGet();
+            rawBytes.addAndGet(response.body().length);
+            lastAppendNanos = System.nanoTime();
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        if (block.size() >= blockBytes) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Compresses the block, appends it to the segment, then indexes its records. A block which fails to be written
+     * is dropped from the segment, so that the next blocks are not appended after a partial one.
+     */
+    private void writeBlock() {
+        if (block.size() == 0) {
+            return;
+        }
+        deflater.reset();
+        deflater.setInput(block.array(), 0, block.size());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        long blockOffset = -1;
+        try {
+            blockOffset = segment.size();
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(BLOCK_MAGIC).putInt(block.size()).putInt(length).flip();
+            ByteBuffer data = ByteBuffer.wrap(compressed, 0, length);
+            while (header.hasRemaining() || data.hasRemaining()) {
+                segment.write(new ByteBuffer[]{header, data});
+            }
+            compressedBytes.addAndGet(12 + length);
+        } catch (IOException e) {
+            logger.errorf("Error writing the archive block of %d responses: %s", blockEntries.size(), e.getMessage());
+            discard(blockOffset);
+            block.reset();
+            blockEntries.clear();
+            return;
+        }
+
+        try {
+            for (IndexEntry entry : blockEntries) {
+                index.writeUTF(entry.isin());
+                index.writeInt((int) entry.date().toEpochDay());
+                index.writeLong(blockOffset);
+                index.writeInt(entry.recordOffset());
+            }
+            index.flush();
+
+            if (segment.size() >= segmentBytes) {
+                closeSegment();
+                openSegment();
+            }
+        } catch (IOException e) {
+            // The block is in the segment: index() finds it again by reading the end of the segment
+            logger.errorf("Error indexing the archive block of %d responses: %s", blockEntries.size(), e.getMessage());
+        }
+        block.reset();
+        blockEntries.clear();
+    }
+
+    /**
+     * Cuts the segment back to the start of a block which failed to be written, or starts a new segment when it cannot.
+     */
+    private void discard(long blockOffset) {
+        try {
+            if (blockOffset >= 0) {
+                segment.truncate(blockOffset);
+                return;
+            }
+        } catch (IOException e) {
+            logger.errorf("Error truncating the archive segment %s: %s", segmentName(segmentNumber, ".dat"), e.getMessage());
+        }
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            logger.errorf("Error closing the archive segment %s: %s", segmentName(segmentNumber, ".dat"), e.getMessage());
+        }
+        try {
+            openSegment();
+        } catch (IOException e) {
+            logger.errorf("Error opening a new archive segment: %s", e.getMessage());
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentNumber++;
+        segment = FileChannel.open(dir.resolve(segmentName(segmentNumber, ".dat")),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(segmentName(segmentNumber, ".idx")),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private void closeSegment() throws IOException {
+        try {
+            index.close();
+        } finally {
+            segment.close();
+        }
+    }
+
+    private static String segmentName(int number, String extension) {
+        return String.format("segment-%06d%s%s", number, Sharding.suffix(), extension);
+    }
+
+    private static int lastSegmentNumber(Path dir, String suffix) throws IOException {
+        int last = 0;
+        for (Path file : segments(dir)) {
+            Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+            if (matcher.matches() && matcher.group(2).equals(suffix)) {
+                last = Math.max(last, Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Writes the responses still in the ring buffer, then closes the segment.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deflater.end();
+        closeSegment();
+        logger.infof("### Response archive: %d responses, %d KB compressed to %d KB",
+            records.get(), rawBytes.get() / 1024, compressedBytes.get() / 1024);
+    }
+
+    // --- Reading ---
+
+    /**
+     * @return the segment files of the archive, in the order of their names
+     */
+    public static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.dat")) {
+                files.forEach(segments::add);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Loads the index files of the segments. The blocks written after the last entries of an index, e.g. when the
+     * process crashed before indexing them, are indexed by reading the end of their segment.
+     * @return the location of the last record of each pair
+     */
+    public static Map<Key, Location> index(Path dir) throws IOException {
+        Map<Key, Location> locations = new HashMap<>();
+        for (Path segment : segments(dir)) {
+            Path indexFile = segment.resolveSibling(segment.getFileName().toString().replaceFirst("\\.dat$", ".idx"));
+            long lastBlock = 0;
+            if (Files.exists(indexFile)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                    while (true) {
+                        String isin = in.readUTF();
+                        LocalDate date = LocalDate.ofEpochDay(in.readInt());
+                        Location location = new Location(segment, in.readLong(), in.readInt());
+                        locations.put(new Key(isin, date), location);
+                        lastBlock = Math.max(lastBlock, location.blockOffset());
+                    }
+                } catch (EOFException e) {
+                    // End of the index
+                }
+            }
+            // From the last indexed block, whose entries may be cut, to the end of the segment
+            scan(segment, lastBlock, entry -> locations.put(entry.key(), entry.location()));
+        }
+        return locations;
+    }
+
+    /**
+     * Reads the records of all the segments sequentially, the pairs archived several times included.
+     * A block cut by a crash at the end of a segment is ignored.
+     * @return the number of records read
+     */
+    public static long scan(Path dir, Consumer<Entry> consumer) throws IOException {
+        long count = 0;
+        for (Path segment : segments(dir)) {
+            count += scan(segment, 0, consumer);
+        }
+        return count;
+    }
+
+    /**
+     * Reads the records of a segment from the block at offset.
+     */
+    private static long scan(Path segment, long offset, Consumer<Entry> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)), 1024 * 1024));
+            while (true) {
+                Block block;
+                try {
+                    block = readBlock(in, segment, offset);
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] records = block.records();
+                DataInputStream recordsIn = new DataInputStream(new ByteArrayInputStream(records));
+                while (recordsIn.available() > 0) {
+                    int recordOffset = records.length - recordsIn.available();
+                    Key key = new Key(recordsIn.readUTF(), LocalDate.ofEpochDay(recordsIn.readInt()));
+                    byte[] body = new byte[recordsIn.readInt()];
+                    recordsIn.readFully(body);
+                    consumer.accept(new Entry(key, new Location(segment, offset, recordOffset), PayloadBuffer.wrap(body)));
+                    count++;
+                }
+                offset += 12 + block.compressedLength();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Random lookup of a record found in the index.
+     */
+    public static PayloadBuffer read(Location location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location.segment(), StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(location.blockOffset()))));
+            byte[] records = readBlock(in, location.segment(), location.blockOffset()).records();
+            DataInputStream recordsIn = new DataInputStream(new ByteArrayInputStream(records, location.recordOffset(),
+                records.length - location.recordOffset()));
+            recordsIn.readUTF();
+            recordsIn.readInt();
+            byte[] body = new byte[recordsIn.readInt()];
+            recordsIn.readFully(body);
+            return PayloadBuffer.wrap(body);
+        }
+    }
+
+    private static Block readBlock(DataInputStream in, Path segment, long offset) throws IOException {
+        int magic = in.readInt();
+        if (magic != BLOCK_MAGIC) {
+            throw new IOException("Corrupted archive block in " + segment + " at " + offset);
+        }
+        int uncompressedLength = in.readInt();
+        int compressedLength = in.readInt();
+        byte[] data = new byte[compressedLength];
+        in.readFully(data);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] records = new byte[uncompressedLength];
+            int length = 0;
+            while (length < uncompressedLength && !inflater.finished()) {
+                length += inflater.inflate(records, length, uncompressedLength - length);
+            }
+            return new Block(records, compressedLength);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted archive block in " + segment + " at " + offset, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Growable block, the records being compressed from its array without a copy.
+     */
+    private static final class BlockBuffer extends ByteArrayOutputStream {
+        BlockBuffer() {
+            super(256 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
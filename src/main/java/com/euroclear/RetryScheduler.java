@@ -0,0 +1,199 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.Metrics;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Retries the work items which failed for a transient reason (exception, 429, 5xx).
+ * Failed items wait in a DelayQueue with an exponential backoff and jitter; a single dispatcher
+ * thread hands them back to the producer executor once their delay is over, so no producer
+ * thread sleeps while waiting. Items exhausting their attempt budget go to the dead-letter file.
+ */
+public class RetryScheduler implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(RetryScheduler.class);
+
+    private final DelayQueue<DelayedWorkItem> delayQueue = new DelayQueue<>();
+    private final Executor producerExecutor;
+    private final CsvFileWriter deadLetterWriter;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Thread dispatcher;
+    private Consumer<WorkItem> retryAction;
+
+    // Items scheduled or being retried
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private int pending;
+    private long retried;
+    private long deadLettered;
+
+    public RetryScheduler(Executor producerExecutor, CsvFileWriter deadLetterWriter, int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.producerExecutor = producerExecutor;
+        this.deadLetterWriter = deadLetterWriter;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.dispatcher = new Thread(this::dispatchLoop, "RetryScheduler");
+        this.dispatcher.setDaemon(true);
+
+        Metrics.gauge("retry.pending", this::getPending);
+        Metrics.gauge("retry.retried", () -> retried);
+        Metrics.gauge("retry.deadLettered", () -> deadLettered);
+    }
+
+    /**
+     * Starts dispatching the retries to the given action, which sends the request again
+     * with the fetch engine in use.
+     */
+    public void start(Consumer<WorkItem> retryAction) {
+        this.retryAction = retryAction;
+        this.dispatcher.start();
+    }
+
+    /**
+     * Schedules a new attempt for the work item, or writes it to the dead-letter file when its
+     * attempt budget is exhausted.
+     */
+    public void schedule(WorkItem workItem, String reason) {
+        WorkItem next = workItem.nextAttempt();
+        if (next.attempt() >= maxAttempts) {
+            deadLetter(next, reason);
+            return;
+        }
+        long delayMs = backoff(next.attempt());
+        logger.infof("### Retrying ISIN %s on %s in %d ms (attempt %d/%d): %s", workItem.isin(), workItem.date(), delayMs, next.attempt() + 1, maxAttempts, reason);
+
+        lock.lock();
+        try {
+            pending++;
+            retried++;
+        } finally {
+            lock.unlock();
+        }
+        delayQueue.put(new DelayedWorkItem(next, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs)));
+    }
+
+    /**
+     * Blocks until no retry is waiting or running.
+     */
+    public void awaitIdle() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending > 0) {
+                idle.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        dispatcher.interrupt();
+        // Items still waiting are not lost silently; one taken by the dispatcher meanwhile is retried instead
+        for (DelayedWorkItem delayed : delayQueue) {
+            if (delayQueue.remove(delayed)) {
+                deadLetter(delayed.workItem(), "run ended before the retry");
+                done();
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random.
+     */
+    long backoff(int attempt) {
+        long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WorkItem workItem = delayQueue.take().workItem();
+                producerExecutor.execute(() -> {
+                    try {
+                        retryAction.accept(workItem);
+                    } catch (Exception e) {
+                        logger.errorf("Error retrying ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+                    } finally {
+                        done();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void done() {
+        lock.lock();
+        try {
+            if (--pending == 0) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deadLetter(WorkItem workItem, String reason) {
+        lock.lock();
+        try {
+            deadLettered++;
+        } finally {
+            lock.unlock();
+        }
+        logger.errorf("Giving up ISIN %s on %s after %d attempts: %s", workItem.isin(), workItem.date(), workItem.attempt(), reason);
+        LiquidityDriveNewClient.recordFailure(workItem.isin(), workItem.date());
+        LiquidityDriveNewClient.settled(workItem.isin(), workItem.date());
+        String row = String.format("\"%s\",\"%s\",%d,\"%s\"",
+            workItem.isin(),
+            workItem.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+            workItem.attempt(),
+            reason.replace("\"", "\"\""));
+        try {
+            synchronized (deadLetterWriter) {
+                deadLetterWriter.writeLine(row);
+                deadLetterWriter.flush();
+            }
+        } catch (IOException e) {
+            logger.errorf("Error writing the dead letter of ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+        }
+    }
+
+    private record DelayedWorkItem(WorkItem workItem, long dueNanos) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((DelayedWorkItem) other).dueNanos);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.euroclear;
+
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.euroclear.util.LiquidityRecord.headerLine;
+import static com.euroclear.util.LiquidityRecord.populateHeaders;
+
+/**
+ * Merge step of a sharded run: appends the rows of the monthly files of the shards ("2025-01-shard-0.csv",
+ * "2025-01-shard-1.csv"..., or the ids of the instances coordinated with leases) to the canonical monthly file
+ * ("2025-01.csv"), which gets a single header.
+ * The rows are merged into a copy of the monthly file, which replaces it once a marker listing the shard files is
+ * written; the shard files are deleted afterwards. A merge interrupted by a crash is finished by the next run when its
+ * marker was written, and started again otherwise, so that the monthly file never holds partial or duplicate rows.
+ * <p>
+ * Usage: mvn exec:java -Dexec.mainClass=com.euroclear.ShardMerge [-Dexec.args=outDir]
+ */
+public class ShardMerge {
+    private static final Logger logger = Logger.getLogger(ShardMerge.class);
+    private static final Pattern SHARD_FILE = Pattern.compile("(\\d{4}-\\d{2})-shard-(.+)\\.csv");
+    private static final String MERGED_SUFFIX = ".csv.merged";
+    private static final String MARKER_SUFFIX = ".merge";
+
+    public static void main(String[] args) throws IOException {
+        Path outDir = args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("user.dir"), "out");
+        populateHeaders();
+        merge(outDir, headerLine());
+    }
+
+    /**
+     * @return the number of rows merged
+     */
+    public static long merge(Path outDir, String headerLine) throws IOException {
+        recover(outDir);
+
+        Map<String, List<Path>> shardFiles = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(outDir, "*-shard-*.csv")) {
+            for (Path file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    shardFiles.computeIfAbsent(matcher.group(1), k -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+
+        long rows = 0;
+        for (Map.Entry<String, List<Path>> entry : shardFiles.entrySet()) {
+            String month = entry.getKey();
+            Path monthFile = outDir.resolve(month + ".csv");
+            Path merged = outDir.resolve(month + MERGED_SUFFIX);
+            List<Path> shards = entry.getValue();
+            shards.sort(null);
+
+            // The month file is never modified in place: a crash leaves either the previous file or the merged one
+            try (FileChannel channel = FileChannel.open(merged, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+                if (Files.exists(monthFile) && Files.size(monthFile) > 0) {
+                    Files.copy(monthFile, Channels.newOutputStream(channel));
+                } else {
+                    writer.write(headerLine);
+                    writer.newLine();
+                }
+                for (Path shard : shards) {
+                    rows += copyRows(shard, writer);
+                }
+                writer.flush();
+                channel.force(true);
+            }
+            writeMarker(outDir, month, shards);
+            commit(outDir, month);
+            logger.infof("### Merged %d shard files into %s", shards.size(), monthFile);
+        }
+        logger.infof("### Merged %d rows", rows);
+        return rows;
+    }
+
+    /**
+     * Finishes the merges interrupted after their marker was written, and drops the merged files of the others, whose
+     * shard files are still there to be merged again.
+     */
+    private static void recover(Path outDir) throws IOException {
+        try (DirectoryStream<Path> markers = Files.newDirectoryStream(outDir, "*" + MARKER_SUFFIX)) {
+            for (Path marker : markers) {
+                String name = marker.getFileName().toString();
+                String month = name.substring(0, name.length() - MARKER_SUFFIX.length());
+                logger.infof("### Finishing the interrupted merge of %s", month);
+                commit(outDir, month);
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(outDir, "*{" + MERGED_SUFFIX + "," + MARKER_SUFFIX + ".tmp}")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Records the shard files of the merged file: from then on, the merge is finished by replacing the month file and
+     * deleting these shard files, even after a crash.
+     */
+    private static void writeMarker(Path outDir, String month, List<Path> shards) throws IOException {
+        Path marker = outDir.resolve(month + MARKER_SUFFIX);
+        Path tmp = outDir.resolve(month + MARKER_SUFFIX + ".tmp");
+        List<String> names = shards.stream().map(shard -> shard.getFileName().toString()).toList();
+        Files.write(tmp, names, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the month file with the merged one, if not done yet, then deletes the merged shard files and the marker.
+     */
+    private static void commit(Path outDir, String month) throws IOException {
+        Path marker = outDir.resolve(month + MARKER_SUFFIX);
+        Path merged = outDir.resolve(month + MERGED_SUFFIX);
+        if (Files.exists(merged)) {
+            Files.move(merged, outDir.resolve(month + ".csv"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (String shard : Files.readAllLines(marker, StandardCharsets.UTF_8)) {
+            if (!shard.isEmpty()) {
+                Files.deleteIfExists(outDir.resolve(shard));
+            }
+        }
+        Files.delete(marker);
+    }
+
+    /**
+     * Copies the lines of the shard file, except its header.
+     */
+    private static long copyRows(Path shard, BufferedWriter writer) throws IOException {
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(shard, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    writer.write(line);
+                    writer.newLine();
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,93 @@
+package com.euroclear;
+
+import org.jboss.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last date fetched successfully for each ISIN, stored as "ISIN,yyyy-MM-dd" lines.
+ * In incremental mode the workload of an ISIN starts the business day after its watermark.
+ * <p>
+ * A watermark only moves over dates which all got a final answer: the first date of an ISIN failing
+ * during the run (dead letter, unexpected status, rows not written) stops its watermark the day before,
+ * so that the next run fetches it again. The file is replaced atomically at the end of a complete run.
+ */
+public class WatermarkStore {
+    private static final Logger logger = Logger.getLogger(WatermarkStore.class);
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final Path path;
+    private final Map<String, LocalDate> watermarks = new TreeMap<>();
+    private final Map<String, LocalDate> firstFailures = new ConcurrentHashMap<>();
+
+    public WatermarkStore(Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                int comma = line.indexOf(',');
+                if (comma <= 0) {
+                    continue;
+                }
+                try {
+                    watermarks.put(line.substring(0, comma), LocalDate.parse(line.substring(comma + 1), DATE_FORMAT));
+                } catch (DateTimeParseException e) {
+                    logger.debugf("Ignoring the invalid watermark line: %s", line);
+                }
+            }
+        }
+        logger.infof("### Watermarks %s: %d ISINs", path, watermarks.size());
+    }
+
+    /**
+     * @return the last date fetched for the ISIN, or null when it was never fetched
+     */
+    public synchronized LocalDate get(String isin) {
+        return watermarks.get(isin);
+    }
+
+    /**
+     * Records a date of the ISIN which did not get a final answer during this run.
+     */
+    public void recordFailure(String isin, LocalDate date) {
+        firstFailures.merge(isin, date, (a, b) -> a.isBefore(b) ? a : b);
+    }
+
+    /**
+     * Moves the watermarks after a complete run.
+     * @param lastDates last date of the workload of each ISIN processed by the run
+     */
+    public synchronized void advance(Map<String, LocalDate> lastDates) {
+        for (Map.Entry<String, LocalDate> entry : lastDates.entrySet()) {
+            LocalDate failure = firstFailures.get(entry.getKey());
+            LocalDate candidate = failure == null ? entry.getValue() : failure.minusDays(1);
+            // A run over older dates never moves a watermark backward
+            watermarks.merge(entry.getKey(), candidate, (a, b) -> a.isAfter(b) ? a : b);
+        }
+    }
+
+    /**
+     * Writes the watermarks to a temporary file which then replaces the store.
+     */
+    public synchronized void save() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, LocalDate> entry : watermarks.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue().format(DATE_FORMAT));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.infof("### Watermarks saved: %d ISINs", watermarks.size());
+    }
+}
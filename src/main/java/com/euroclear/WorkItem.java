@@ -3,5 +3,14 @@ package com.euroclear;
 import java.time.LocalDate;
 /**
  * Represents a single unit of work: one ISIN for one Date.
+ * The attempt counts the retries already done for this pair.
  */
-public record WorkItem(String isin, LocalDate date){}
\ No newline at end of file
+public record WorkItem(String isin, LocalDate date, int attempt){
+    public WorkItem(String isin, LocalDate date) {
+        this(isin, date, 0);
+    }
+
+    public WorkItem nextAttempt() {
+        return new WorkItem(isin, date, attempt + 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.euroclear;
+
+import com.euroclear.util.Metrics;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of fetch workers pulling the work items from work-stealing deques, replacing the
+ * partitioning of the workload into fixed batches with one future per batch.
+ * <ul>
+ *     <li>priority and fairness: the work items come from the {@link Workload.Cursor}, date by date following the priority,
+ *     the ISINs of a same date following each other so that all the ISINs progress together</li>
+ *     <li>work stealing: a worker takes from the head of its own deque, then from the tail of the others, then refills
+ *     its deque by chunks of REFILL items from the cursor, so that a worker slowed down by a server, or blocked in
+ *     the cursor, never holds work back</li>
+ *     <li>backpressure: a worker only takes its next item once the previous one is handled, i.e. once the limiters
+ *     allowed its request and the bounded queue of the consumers accepted its rows</li>
+ * </ul>
+ * At most workers x REFILL work items exist at a time, whatever the size of the workload.
+ */
+public class WorkScheduler {
+    private static final Logger logger = Logger.getLogger(WorkScheduler.class);
+    private static final int REFILL = 8;
+
+    @FunctionalInterface
+    public interface WorkerTask {
+        void process(WorkItem workItem) throws Exception;
+    }
+
+    private final int workers;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+
+    public WorkScheduler(int workers) {
+        this.workers = Math.max(1, workers);
+
+        Metrics.gauge("scheduler.processed", processed::get);
+        Metrics.gauge("scheduler.stolen", stolen::get);
+    }
+
+    /**
+     * Processes all the work items of the cursor with the workers running on the executor, and returns once they are all processed.
+     */
+    public void run(Workload.Cursor cursor, WorkerTask task, Executor executor) throws InterruptedException {
+        List<ConcurrentLinkedDeque<WorkItem>> deques = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            deques.add(new ConcurrentLinkedDeque<>());
+        }
+        logger.infof("### Scheduling the work items on %d workers", workers);
+
+        CountDownLatch done = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            int self = i;
+            executor.execute(() -> {
+                try {
+                    WorkItem workItem;
+                    while ((workItem = next(cursor, deques, self)) != null) {
+                        try {
+                            task.process(workItem);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (Exception e) {
+                            logger.errorf("Error processing ISIN %s on %s: %s", workItem.isin(), workItem.date(), e.getMessage());
+                        }
+                        processed.incrementAndGet();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private WorkItem next(Workload.Cursor cursor, List<ConcurrentLinkedDeque<WorkItem>> deques, int self) {
+        ConcurrentLinkedDeque<WorkItem> own = deques.get(self);
+        WorkItem workItem = own.pollFirst();
+        if (workItem != null) {
+            return workItem;
+        }
+        // Steal before pulling from the cursor: a worker blocked in the cursor (see LeaseCoordinator)
+        // must not hold back the items of its deque
+        workItem = steal(deques, self);
+        if (workItem != null) {
+            return workItem;
+        }
+        // Refill the own deque from the cursor, the other workers may steal from it
+        for (int i = 0; i < REFILL && (workItem = cursor.next()) != null; i++) {
+            own.addLast(workItem);
+        }
+        workItem = own.pollFirst();
+        return workItem != null ? workItem : steal(deques, self);
+    }
+
+    private WorkItem steal(List<ConcurrentLinkedDeque<WorkItem>> deques, int self) {
+        for (int i = 1; i < deques.size(); i++) {
+            WorkItem workItem = deques.get((self + i) % deques.size()).pollLast();
+            if (workItem != null) {
+                stolen.incrementAndGet();
+                return workItem;
+            }
+        }
+        return null;
+    }
+}
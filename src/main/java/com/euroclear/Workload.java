@@ -0,0 +1,342 @@
+package com.euroclear;
+
+import com.euroclear.util.Metrics;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.LongConsumer;
+
+/**
+ * ISIN x business day cross product, generated lazily instead of being materialised as a list of work items.
+ * The workload only holds the ISINs, the epoch days of the business days and, for each ISIN, the range of
+ * day indexes to fetch (narrowed by the incremental mode and the availability probes). A pair is encoded as a long,
+ * the ISIN index in the high 32 bits and the day index in the low 32 bits; the WorkItem is only created when a
+ * producer pulls it from a {@link Cursor}, once the skip filters (checkpoint journal, negative cache...) let it through.
+ * <p>
+ * The pairs are iterated date by date, following the priority, and ISIN by ISIN within a date.
+ */
+public class Workload {
+
+    public enum Priority {
+        NEWEST_FIRST, OLDEST_FIRST;
+
+        /**
+         * @param value "newest" or "oldest"
+         */
+        public static Priority parse(String value) {
+            return "oldest".equalsIgnoreCase(value.trim()) ? OLDEST_FIRST : NEWEST_FIRST;
+        }
+    }
+
+    /**
+     * Business days of one ISIN within one month, the unit of work claimed by the cooperating instances.
+     * The days are indexes in the business days of the workload, both included.
+     */
+    public record Chunk(int isinIndex, YearMonth month, int fromDay, int toDay) {
+    }
+
+    private final String[] isins;
+    private final int[] epochDays;
+    private final int[] fromDay;
+    private final int[] toDay;
+    private final Priority priority;
+    private final List<BiPredicate<String, LocalDate>> skipFilters = new ArrayList<>();
+
+    /**
+     * @param isins ISINs to fetch
+     * @param dates business days of the range, in ascending order
+     */
+    public Workload(String[] isins, List<LocalDate> dates, Priority priority) {
+        this.isins = isins.clone();
+        this.epochDays = dates.stream().mapToInt(date -> (int) date.toEpochDay()).toArray();
+        this.fromDay = new int[isins.length];
+        this.toDay = new int[isins.length];
+        Arrays.fill(toDay, epochDays.length - 1);
+        this.priority = priority;
+    }
+
+    public int isinCount() {
+        return isins.length;
+    }
+
+    public String isin(int isinIndex) {
+        return isins[isinIndex];
+    }
+
+    /**
+     * Restricts the dates of an ISIN to the business days from 'from' to 'to', both included.
+     * The range can only be narrowed; a null bound keeps the current one.
+     */
+    public synchronized void restrict(int isinIndex, LocalDate from, LocalDate to) {
+        if (from != null) {
+            fromDay[isinIndex] = Math.max(fromDay[isinIndex], ceilingDay(from));
+        }
+        if (to != null) {
+            toDay[isinIndex] = Math.min(toDay[isinIndex], floorDay(to));
+        }
+    }
+
+    /**
+     * Removes all the dates of an ISIN.
+     */
+    public synchronized void exclude(int isinIndex) {
+        fromDay[isinIndex] = epochDays.length;
+        toDay[isinIndex] = -1;
+    }
+
+    /**
+     * Pairs rejected by the filter are skipped by the cursors.
+     */
+    public synchronized void skipIf(BiPredicate<String, LocalDate> filter) {
+        skipFilters.add(filter);
+    }
+
+    /**
+     * @return the work items of one ISIN, in ascending order of date
+     */
+    public synchronized List<WorkItem> workItems(int isinIndex) {
+        List<WorkItem> workItems = new ArrayList<>(Math.max(0, toDay[isinIndex] - fromDay[isinIndex] + 1));
+        for (int day = fromDay[isinIndex]; day <= toDay[isinIndex]; day++) {
+            workItems.add(new WorkItem(isins[isinIndex], LocalDate.ofEpochDay(epochDays[day])));
+        }
+        return workItems;
+    }
+
+    /**
+     * @return the number of pairs in the ranges of the ISINs, before the skip filters
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (int i = 0; i < isins.length; i++) {
+            size += Math.max(0, toDay[i] - fromDay[i] + 1);
+        }
+        return size;
+    }
+
+    /**
+     * @return the oldest date to fetch, or null when the workload is empty
+     */
+    public synchronized LocalDate firstDate() {
+        int first = Integer.MAX_VALUE;
+        for (int i = 0; i < isins.length; i++) {
+            if (fromDay[i] <= toDay[i]) {
+                first = Math.min(first, fromDay[i]);
+            }
+        }
+        return first == Integer.MAX_VALUE ? null : LocalDate.ofEpochDay(epochDays[first]);
+    }
+
+    /**
+     * @return the last date to fetch of each ISIN having dates to fetch
+     */
+    public synchronized Map<String, LocalDate> lastDates() {
+        Map<String, LocalDate> lastDates = new LinkedHashMap<>();
+        for (int i = 0; i < isins.length; i++) {
+            if (fromDay[i] <= toDay[i]) {
+                lastDates.put(isins[i], LocalDate.ofEpochDay(epochDays[toDay[i]]));
+            }
+        }
+        return lastDates;
+    }
+
+    /**
+     * Iterates the pairs of the ranges, in the order of the priority, encoded as longs.
+     * The skip filters are not applied.
+     */
+    public PrimitiveIterator.OfLong pairs() {
+        return new PrimitiveIterator.OfLong() {
+            // Position in the date-major order: step of the date, then index of the ISIN
+            private long position = -1;
+            private long next = advance();
+
+            private long advance() {
+                long total = (long) epochDays.length * isins.length;
+                while (++position < total) {
+                    int step = (int) (position / isins.length);
+                    int isin = (int) (position % isins.length);
+                    int day = priority == Priority.NEWEST_FIRST ? epochDays.length - 1 - step : step;
+                    if (day >= fromDay[isin] && day <= toDay[isin]) {
+                        return pack(isin, day);
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public long nextLong() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                long pair = next;
+                next = advance();
+                return pair;
+            }
+        };
+    }
+
+    /**
+     * @return the chunks of the ranges, month by month following the priority, ISIN by ISIN within a month
+     */
+    public synchronized List<Chunk> monthlyChunks() {
+        // Day indexes of the first and last business days of each month
+        List<int[]> months = new ArrayList<>();
+        int first = 0;
+        for (int day = 1; day <= epochDays.length; day++) {
+            if (day == epochDays.length || !YearMonth.from(date(day)).equals(YearMonth.from(date(first)))) {
+                months.add(new int[]{first, day - 1});
+                first = day;
+            }
+        }
+        if (priority == Priority.NEWEST_FIRST) {
+            Collections.reverse(months);
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (int[] month : months) {
+            for (int i = 0; i < isins.length; i++) {
+                int from = Math.max(month[0], fromDay[i]);
+                int to = Math.min(month[1], toDay[i]);
+                if (from <= to) {
+                    chunks.add(new Chunk(i, YearMonth.from(date(from)), from, to));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Iterates the pairs of one chunk, in the order of the priority. The skip filters are not applied.
+     */
+    public PrimitiveIterator.OfLong pairs(Chunk chunk) {
+        return new PrimitiveIterator.OfLong() {
+            private int step;
+
+            @Override
+            public boolean hasNext() {
+                return step <= chunk.toDay() - chunk.fromDay();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int day = priority == Priority.NEWEST_FIRST ? chunk.toDay() - step : chunk.fromDay() + step;
+                step++;
+                return pack(chunk.isinIndex(), day);
+            }
+        };
+    }
+
+    public LocalDate date(int dayIndex) {
+        return LocalDate.ofEpochDay(epochDays[dayIndex]);
+    }
+
+    public static long pack(int isinIndex, int dayIndex) {
+        return ((long) isinIndex << 32) | dayIndex;
+    }
+
+    public WorkItem workItem(long pair) {
+        return new WorkItem(isins[(int) (pair >>> 32)], LocalDate.ofEpochDay(epochDays[(int) pair]));
+    }
+
+    /**
+     * Thread-safe source of the work items, pulled on demand by the producers.
+     */
+    public Cursor cursor() {
+        return cursor(pairs(), null);
+    }
+
+    /**
+     * Cursor over other pairs of the workload, e.g. the chunks claimed by a {@link LeaseCoordinator}.
+     *
+     * @param onPulled called with each pair let through by the filters, before its work item is returned
+     */
+    public Cursor cursor(PrimitiveIterator.OfLong pairs, LongConsumer onPulled) {
+        Cursor cursor = new Cursor(pairs, onPulled);
+        Metrics.gauge("workload.pulled", cursor::getPulled);
+        Metrics.gauge("workload.skipped", cursor::getSkipped);
+        return cursor;
+    }
+
+    public final class Cursor {
+        // Not a monitor: next() may block (see LeaseCoordinator), which must not pin the carriers of the virtual threads
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PrimitiveIterator.OfLong pairs;
+        private final LongConsumer onPulled;
+        // Written under the lock, read by the metrics without it
+        private volatile long pulled;
+        private volatile long skipped;
+
+        private Cursor(PrimitiveIterator.OfLong pairs, LongConsumer onPulled) {
+            this.pairs = pairs;
+            this.onPulled = onPulled;
+        }
+
+        /**
+         * @return the next work item not skipped by the filters, or null at the end of the workload
+         */
+        public WorkItem next() {
+            lock.lock();
+            try {
+                while (pairs.hasNext()) {
+                    long pair = pairs.nextLong();
+                    WorkItem workItem = workItem(pair);
+                    if (isSkipped(workItem)) {
+                        skipped++;
+                    } else {
+                        pulled++;
+                        if (onPulled != null) {
+                            onPulled.accept(pair);
+                        }
+                        return workItem;
+                    }
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long getPulled() {
+            return pulled;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+
+    private boolean isSkipped(WorkItem workItem) {
+        for (BiPredicate<String, LocalDate> filter : skipFilters) {
+            if (filter.test(workItem.isin(), workItem.date())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int ceilingDay(LocalDate date) {
+        int index = Arrays.binarySearch(epochDays, (int) date.toEpochDay());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int floorDay(LocalDate date) {
+        int index = Arrays.binarySearch(epochDays, (int) date.toEpochDay());
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,223 @@
+package com.euroclear.util;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) controller of the number of requests in flight.
+ * <ul>
+ *     <li>every healthy response grows the limit by 1/limit, i.e. by one request per "round" of responses, but only
+ *     while the limit is used: with fewer requests in flight, e.g. workers waiting on the rate limiter, the responses
+ *     say nothing of a higher concurrency and the limit would drift up to the maximum</li>
+ *     <li>a 429, a 503, a failed request or a p95 latency drifting above its baseline cuts the limit by DECREASE_FACTOR,
+ *     at most once per cool down so that one burst of errors is not punished several times</li>
+ *     <li>a Retry-After header suspends all the new requests until the date given by the server</li>
+ * </ul>
+ * A ReentrantLock is used instead of synchronized so that waiting virtual threads do not pin their carrier.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger logger = Logger.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int P95_EVERY = 64;
+    private static final long COOL_DOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+
+    // Ring buffer of the latest latencies, used to compute the p95
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+    private long p95Nanos;
+    private long baselineP95Nanos;
+
+    public AdaptiveConcurrencyLimiter(int minLimit, int initialLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency range: " + minLimit + " - " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.lastDecreaseNanos = System.nanoTime() - COOL_DOWN_NANOS;
+
+        Metrics.gauge("concurrency.limit", this::getLimit);
+        Metrics.gauge("concurrency.inFlight", this::getInFlight);
+        Metrics.gauge("concurrency.p95Ms", () -> TimeUnit.NANOSECONDS.toMillis(p95Nanos));
+    }
+
+    /**
+     * Blocks until the number of requests in flight is below the current limit and no Retry-After pause is active.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long pause = pausedUntilNanos - System.nanoTime();
+                if (pause > 0) {
+                    changed.awaitNanos(pause);
+                } else if (inFlight >= (int) limit) {
+                    changed.await();
+                } else {
+                    inFlight++;
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the permit taken by acquire() and feeds the controller with the outcome of the request.
+     * @param statusCode HTTP status, or -1 when the request failed without a response
+     * @param latencyNanos time between the sending of the request and its response
+     * @param retryAfter value of the Retry-After header, if any
+     */
+    public void release(int statusCode, long latencyNanos, String retryAfter) {
+        lock.lock();
+        try {
+            // Counting this request
+            boolean saturated = inFlight >= (int) limit - 1;
+            inFlight--;
+            long now = System.nanoTime();
+
+            long retryAfterNanos = parseRetryAfter(retryAfter);
+            if (retryAfterNanos > 0) {
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + retryAfterNanos);
+                logger.infof("### Server asked to retry after %d ms, pausing new requests", TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+            }
+
+            if (statusCode < 0) {
+                decrease(now, "request failed");
+            } else if (statusCode == HttpStatus.SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                decrease(now, "status " + statusCode);
+            } else if (statusCode < HttpStatus.SC_SERVER_ERROR) {
+                if (recordLatency(latencyNanos)) {
+                    decrease(now, "p95 latency " + TimeUnit.NANOSECONDS.toMillis(p95Nanos) + " ms");
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the permit taken by acquire() without feeding the controller, for an outcome which does not
+     * concern the server as a whole (e.g. the quota of one credential of a {@link CredentialPool} exhausted).
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until no request is in flight anymore.
+     */
+    public void awaitIdle() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight > 0) {
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long now, String reason) {
+        if (now - lastDecreaseNanos < COOL_DOWN_NANOS) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        double previous = limit;
+        limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+        logger.infof("### Concurrency limit decreased from %.1f to %.1f (%s)", previous, limit, reason);
+    }
+
+    /**
+     * Stores the sample and recomputes the p95 every P95_EVERY samples.
+     * @return true when the p95 drifts above the tolerated baseline
+     */
+    private boolean recordLatency(long latencyNanos) {
+        latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latencyNanos;
+        if (latencyCount % P95_EVERY != 0) {
+            return false;
+        }
+        long[] window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(window);
+        p95Nanos = window[(int) Math.ceil(window.length * 0.95) - 1];
+
+        if (baselineP95Nanos == 0 || p95Nanos < baselineP95Nanos) {
+            baselineP95Nanos = p95Nanos;
+            return false;
+        }
+        // Let the baseline follow slowly the latency of the server which varies during the day
+        baselineP95Nanos += (p95Nanos - baselineP95Nanos) / 100;
+        return p95Nanos > baselineP95Nanos * LATENCY_TOLERANCE;
+    }
+
+    /**
+     * Retry-After is either a number of seconds or an HTTP date.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toNanos());
+            } catch (DateTimeParseException ignored) {
+                logger.debugf("Invalid Retry-After header: %s", value);
+                return 0;
+            }
+        }
+    }
+}
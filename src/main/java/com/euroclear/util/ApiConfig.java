@@ -4,6 +4,8 @@ import org.jboss.logging.Logger;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 public class ApiConfig {
@@ -26,12 +28,102 @@ public class ApiConfig {
     public static LocalDate END_DATE;
     static DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    // Sleep time to wait before to execute a new HTTP request
-    public static Long SLEEP_TIME_MS;
+    // Global rate of HTTP requests (requests per second) and burst size, shared by all the producers
+    public static Double RATE_LIMIT_RPS;
+    public static Integer RATE_LIMIT_BURST;
 
     // Token Euroclear expiration time
     public static Long TOKEN_EXPIRATION_SECOND;
 
+    // Fetch engine: "classic" (blocking CloseableHttpClient) or "async" (CloseableHttpAsyncClient, HTTP/2 when negotiated)
+    public static final String CLASSIC_FETCH_ENGINE = "classic";
+    public static final String ASYNC_FETCH_ENGINE = "async";
+    public static String FETCH_ENGINE;
+
+    // Range of HTTP requests in flight, adjusted by the adaptive concurrency controller
+    public static Integer MIN_IN_FLIGHT;
+    public static Integer INITIAL_IN_FLIGHT;
+    public static Integer MAX_IN_FLIGHT;
+
+    // Retries of the transient failures (exception, 429, 5xx): total attempts per work item and backoff range
+    public static Integer RETRY_MAX_ATTEMPTS;
+    public static Long RETRY_BASE_DELAY_MS;
+    public static Long RETRY_MAX_DELAY_MS;
+
+    // Convert the JSON responses to CSV rows while reading the HTTP stream, instead of queuing the JSON
+    public static Boolean STREAMING_CONVERSION;
+
+    // Interval in seconds between two reports of the metrics in the log. 0 disables the report
+    public static Long METRICS_INTERVAL_SECOND;
+
+    // Offer HTTP/2 to multiplex the async requests as streams, falling back to a pool of HTTP/1.1 connections
+    public static Boolean ASYNC_HTTP2;
+
+    // Settlement calendars whose closing days are not fetched: TARGET2, NONE or paths of calendar files, comma separated
+    public static String CALENDARS;
+
+    // Days during which a 204 received for a recent date is cached. The 404 and the 204 of older dates are cached permanently
+    public static Long NEGATIVE_CACHE_TTL_DAYS;
+
+    // Probe the first and last available dates of each ISIN before the sweep, down to a window of PROBE_MIN_WINDOW_DAYS business days
+    public static Boolean PROBE_AVAILABILITY;
+    public static Integer PROBE_MIN_WINDOW_DAYS;
+
+    // Number of fetch workers of the classic engine, and order of the dates: "newest" or "oldest" first
+    public static Integer FETCH_WORKERS;
+    public static String SCHEDULE_PRIORITY;
+
+    // Only fetch, for each ISIN, the business days following its watermark (last date fetched successfully)
+    public static Boolean INCREMENTAL;
+
+    // Shard of this process when a run is spread over SHARD_COUNT processes, from 0 to SHARD_COUNT - 1
+    public static Integer SHARD_INDEX;
+    public static Integer SHARD_COUNT;
+
+    // Shared directory where the cooperating instances lease the ISIN x month chunks of the workload, lease expiry and id of this instance
+    public static String LEASE_DIR;
+    public static Long LEASE_TTL_SECOND;
+    public static String INSTANCE_ID;
+
+    // Names of the credential sets (subscriptions) among which the requests are spread, comma separated. A set NAME reads
+    // CLIENT_ID_NAME, API_KEY_NAME, CERTIFICATE_FILE_NAME_NAME, CERTIFICATE_PASSWORD_NAME, RATE_LIMIT_RPS_NAME and RATE_LIMIT_BURST_NAME,
+    // each one defaulting to the variable without suffix
+    public static List<String> CREDENTIAL_SETS;
+
+    // Hedged requests: a request unanswered after the HEDGE_PERCENTILE of the recent latencies is sent a second time,
+    // the hedges being capped to HEDGE_BUDGET_PERCENT of the requests
+    public static Boolean HEDGING;
+    public static Double HEDGE_PERCENTILE;
+    public static Double HEDGE_BUDGET_PERCENT;
+
+    // Circuit breaker: the requests are parked for CIRCUIT_OPEN_SECOND when CIRCUIT_FAILURE_RATE percent of the last
+    // CIRCUIT_WINDOW requests failed, or were answered after CIRCUIT_SLOW_REQUEST_MS
+    public static Boolean CIRCUIT_BREAKER;
+    public static Integer CIRCUIT_WINDOW;
+    public static Double CIRCUIT_FAILURE_RATE;
+    public static Long CIRCUIT_SLOW_REQUEST_MS;
+    public static Long CIRCUIT_OPEN_SECOND;
+
+    // Archive of the raw 200 responses in out/archive, in segments of ARCHIVE_SEGMENT_MB made of blocks of
+    // ARCHIVE_BLOCK_KB compressed together
+    public static Boolean ARCHIVE;
+    public static Long ARCHIVE_SEGMENT_MB;
+    public static Integer ARCHIVE_BLOCK_KB;
+
+    // Budget of the payloads waiting in the work queue for the consumers
+    public static Long QUEUE_MAX_MB;
+
+    // Group commit of the monthly files: a file is flushed, and its rows journaled, once OUTPUT_COMMIT_CHARS are
+    // written or OUTPUT_COMMIT_MS after the first row not flushed
+    public static Long OUTPUT_COMMIT_CHARS;
+    public static Long OUTPUT_COMMIT_MS;
+
+    // Durability of the monthly files (batch, force) written through a FileChannel; not set for a BufferedWriter.
+    // With force, the files are forced to the storage every OUTPUT_FORCE_MB or OUTPUT_FORCE_MS
+    public static ChannelWriter.Durability OUTPUT_DURABILITY;
+    public static Long OUTPUT_FORCE_MB;
+    public static Long OUTPUT_FORCE_MS;
+
     public ApiConfig() {
         throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
     }
@@ -50,17 +142,269 @@ public class ApiConfig {
         START_DATE = LocalDate.parse(getEnvOrExit("START_DATE"), DATE_FORMAT);
         END_DATE = LocalDate.parse(getEnvOrExit("END_DATE"), DATE_FORMAT);
 
-        // Sleep Time
-        SLEEP_TIME_MS = Optional
-            .ofNullable(System.getenv("SLEEP_TIME_MS"))
-            .map(s -> Long.parseLong(s))
-            .orElse(1000L);
+        // Rate limit. Default: 10 requests per second, no burst
+        RATE_LIMIT_RPS = Optional
+            .ofNullable(System.getenv("RATE_LIMIT_RPS"))
+            .map(s -> Double.parseDouble(s))
+            .orElse(10.0);
+
+        RATE_LIMIT_BURST = Optional
+            .ofNullable(System.getenv("RATE_LIMIT_BURST"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(1);
 
         // Token Euroclear expiration time. Default: 10 min - 600s - 600000ms
         TOKEN_EXPIRATION_SECOND = Optional
             .ofNullable(System.getenv("TOKEN_EXPIRATION_SECOND"))
             .map(s -> Long.parseLong(s) * 1000)
             .orElse(600000L);
+
+        // Fetch engine. Default: classic
+        FETCH_ENGINE = Optional
+            .ofNullable(System.getenv("FETCH_ENGINE"))
+            .map(String::trim)
+            .orElse(CLASSIC_FETCH_ENGINE);
+
+        // Requests in flight. Default: from 1 to 64, starting at 8
+        MIN_IN_FLIGHT = Optional
+            .ofNullable(System.getenv("MIN_IN_FLIGHT"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(1);
+
+        INITIAL_IN_FLIGHT = Optional
+            .ofNullable(System.getenv("INITIAL_IN_FLIGHT"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(8);
+
+        MAX_IN_FLIGHT = Optional
+            .ofNullable(System.getenv("MAX_IN_FLIGHT"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(64);
+
+        // Retries. Default: 5 attempts, backoff from 500 ms to 1 min
+        RETRY_MAX_ATTEMPTS = Optional
+            .ofNullable(System.getenv("RETRY_MAX_ATTEMPTS"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(5);
+
+        RETRY_BASE_DELAY_MS = Optional
+            .ofNullable(System.getenv("RETRY_BASE_DELAY_MS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(500L);
+
+        RETRY_MAX_DELAY_MS = Optional
+            .ofNullable(System.getenv("RETRY_MAX_DELAY_MS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(60000L);
+
+        // Streaming conversion. Default: true
+        STREAMING_CONVERSION = Optional
+            .ofNullable(System.getenv("STREAMING_CONVERSION"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(true);
+
+        // Metrics report. Default: every 30s
+        METRICS_INTERVAL_SECOND = Optional
+            .ofNullable(System.getenv("METRICS_INTERVAL_SECOND"))
+            .map(s -> Long.parseLong(s))
+            .orElse(30L);
+
+        // HTTP/2 for the async fetch engine. Default: true
+        ASYNC_HTTP2 = Optional
+            .ofNullable(System.getenv("ASYNC_HTTP2"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(true);
+
+        // Settlement calendars. Default: TARGET2
+        CALENDARS = Optional
+            .ofNullable(System.getenv("CALENDARS"))
+            .map(String::trim)
+            .orElse(SettlementCalendar.TARGET2);
+
+        // Negative cache. Default: 7 days
+        NEGATIVE_CACHE_TTL_DAYS = Optional
+            .ofNullable(System.getenv("NEGATIVE_CACHE_TTL_DAYS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(7L);
+
+        // Availability probing. Default: false, windows of 20 business days
+        PROBE_AVAILABILITY = Optional
+            .ofNullable(System.getenv("PROBE_AVAILABILITY"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(false);
+
+        PROBE_MIN_WINDOW_DAYS = Optional
+            .ofNullable(System.getenv("PROBE_MIN_WINDOW_DAYS"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(20);
+
+        // Fetch workers. Default: MAX_IN_FLIGHT workers, newest dates first
+        FETCH_WORKERS = Optional
+            .ofNullable(System.getenv("FETCH_WORKERS"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(MAX_IN_FLIGHT);
+
+        SCHEDULE_PRIORITY = Optional
+            .ofNullable(System.getenv("SCHEDULE_PRIORITY"))
+            .map(String::trim)
+            .orElse("newest");
+
+        // Incremental mode. Default: false
+        INCREMENTAL = Optional
+            .ofNullable(System.getenv("INCREMENTAL"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(false);
+
+        // Sharding. Default: a single process
+        SHARD_COUNT = Optional
+            .ofNullable(System.getenv("SHARD_COUNT"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(1);
+
+        SHARD_INDEX = Optional
+            .ofNullable(System.getenv("SHARD_INDEX"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(0);
+
+        if (SHARD_COUNT < 1 || SHARD_INDEX < 0 || SHARD_INDEX >= SHARD_COUNT) {
+            logger.errorf("Invalid shard %d of %d. Exiting.", SHARD_INDEX, SHARD_COUNT);
+            System.exit(1);
+        }
+
+        // Lease coordination. Default: disabled, 60 seconds, host name and process id
+        LEASE_DIR = Optional
+            .ofNullable(System.getenv("LEASE_DIR"))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .orElse(null);
+
+        LEASE_TTL_SECOND = Optional
+            .ofNullable(System.getenv("LEASE_TTL_SECOND"))
+            .map(s -> Long.parseLong(s))
+            .orElse(60L);
+
+        // Only letters, digits, '_' and '-' as the id is part of the names of the files of the instance
+        INSTANCE_ID = Optional
+            .ofNullable(System.getenv("INSTANCE_ID"))
+            .orElse(Optional.ofNullable(System.getenv("HOSTNAME")).orElse("localhost") + "-" + ProcessHandle.current().pid())
+            .replaceAll("[^A-Za-z0-9_-]", "_");
+
+        // Credential sets. Default: none, the single credential of CLIENT_ID and API_KEY
+        CREDENTIAL_SETS = Optional
+            .ofNullable(System.getenv("CREDENTIAL_SETS"))
+            .map(s -> Arrays.stream(s.split(",")).map(String::trim).filter(name -> !name.isEmpty()).toList())
+            .orElse(List.of());
+
+        // Hedged requests. Default: false, after the p95 latency, at most 5% of extra requests
+        HEDGING = Optional
+            .ofNullable(System.getenv("HEDGING"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(false);
+
+        HEDGE_PERCENTILE = Optional
+            .ofNullable(System.getenv("HEDGE_PERCENTILE"))
+            .map(s -> Double.parseDouble(s))
+            .orElse(95.0);
+
+        HEDGE_BUDGET_PERCENT = Optional
+            .ofNullable(System.getenv("HEDGE_BUDGET_PERCENT"))
+            .map(s -> Double.parseDouble(s))
+            .orElse(5.0);
+
+        // Circuit breaker. Default: true, 50% of the last 100 requests failed or slower than 30s, parked for 30s
+        CIRCUIT_BREAKER = Optional
+            .ofNullable(System.getenv("CIRCUIT_BREAKER"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(true);
+
+        CIRCUIT_WINDOW = Optional
+            .ofNullable(System.getenv("CIRCUIT_WINDOW"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(100);
+
+        CIRCUIT_FAILURE_RATE = Optional
+            .ofNullable(System.getenv("CIRCUIT_FAILURE_RATE"))
+            .map(s -> Double.parseDouble(s))
+            .orElse(50.0);
+
+        CIRCUIT_SLOW_REQUEST_MS = Optional
+            .ofNullable(System.getenv("CIRCUIT_SLOW_REQUEST_MS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(30000L);
+
+        CIRCUIT_OPEN_SECOND = Optional
+            .ofNullable(System.getenv("CIRCUIT_OPEN_SECOND"))
+            .map(s -> Long.parseLong(s))
+            .orElse(30L);
+
+        // Response archive. Default: false, segments of 256 MB, blocks of 256 KB
+        ARCHIVE = Optional
+            .ofNullable(System.getenv("ARCHIVE"))
+            .map(s -> Boolean.parseBoolean(s))
+            .orElse(false);
+
+        ARCHIVE_SEGMENT_MB = Optional
+            .ofNullable(System.getenv("ARCHIVE_SEGMENT_MB"))
+            .map(s -> Long.parseLong(s))
+            .orElse(256L);
+
+        ARCHIVE_BLOCK_KB = Optional
+            .ofNullable(System.getenv("ARCHIVE_BLOCK_KB"))
+            .map(s -> Integer.parseInt(s))
+            .orElse(256);
+
+        // Budget of the work queue. Default: 64 MB
+        QUEUE_MAX_MB = Optional
+            .ofNullable(System.getenv("QUEUE_MAX_MB"))
+            .map(s -> Long.parseLong(s))
+            .orElse(64L);
+
+        // Group commit of the monthly files. Default: every 1M characters or 200 ms
+        OUTPUT_COMMIT_CHARS = Optional
+            .ofNullable(System.getenv("OUTPUT_COMMIT_CHARS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(1024L * 1024L);
+
+        OUTPUT_COMMIT_MS = Optional
+            .ofNullable(System.getenv("OUTPUT_COMMIT_MS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(200L);
+
+        // Durability of the monthly files. Default: not set (BufferedWriter), forced every 8 MB or 1000 ms
+        OUTPUT_DURABILITY = Optional
+            .ofNullable(System.getenv("OUTPUT_DURABILITY"))
+            .map(s -> ChannelWriter.Durability.valueOf(s.trim().toUpperCase()))
+            .orElse(null);
+
+        OUTPUT_FORCE_MB = Optional
+            .ofNullable(System.getenv("OUTPUT_FORCE_MB"))
+            .map(s -> Long.parseLong(s))
+            .orElse(8L);
+
+        OUTPUT_FORCE_MS = Optional
+            .ofNullable(System.getenv("OUTPUT_FORCE_MS"))
+            .map(s -> Long.parseLong(s))
+            .orElse(1000L);
+
+        if (LEASE_DIR != null && SHARD_COUNT > 1) {
+            logger.error("LEASE_DIR and SHARD_COUNT cannot be used together. Exiting.");
+            System.exit(1);
+        }
+        if (LEASE_DIR != null && INCREMENTAL) {
+            // The done markers of the chunks and the journals of all the instances already skip what was fetched
+            logger.warn("INCREMENTAL is ignored when the instances are coordinated with LEASE_DIR");
+            INCREMENTAL = false;
+        }
+    }
+
+    /**
+     * @return the variable 'name' of a credential set, e.g. API_KEY_B for the set B, or the variable without suffix when not set
+     */
+    public static String getCredentialEnv(String name, String credentialSet) {
+        return Optional
+            .ofNullable(System.getenv(name + "_" + credentialSet))
+            .filter(s -> !s.trim().isEmpty())
+            .orElse(System.getenv(name));
     }
 
     public static String getEnvOrExit(String name) {
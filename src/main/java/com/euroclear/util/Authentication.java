@@ -1,15 +1,25 @@
 package com.euroclear.util;
 
 import com.microsoft.aad.msal4j.*;
+import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
 import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
 import org.apache.hc.client5.http.ssl.TlsSocketStrategy;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
 import org.apache.hc.core5.http.ssl.TLS;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.ssl.SSLContexts;
 import org.apache.hc.core5.util.Timeout;
 import org.jboss.logging.Logger;
@@ -20,9 +30,8 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 import static com.euroclear.LiquidityDriveNewClient.isDryRun;
 import static com.euroclear.util.ApiConfig.*;
@@ -30,30 +39,17 @@ import static com.euroclear.util.ApiConfig.*;
 public class Authentication {
 
     private static final Logger logger = Logger.getLogger(Authentication.class);
-    private static final ThreadLocal<IAuthenticationResult> currentToken = new ThreadLocal<>();
-    private static Set<String> scopes = Collections.singleton(APPLICATION_ID + "/.default");
-    private static IConfidentialClientApplication app;
 
-    public static CloseableHttpClient createHttpClient() throws Exception {
-        int cores = Runtime.getRuntime().availableProcessors();
-
-        // 1. Load the client's keystore for key material (your private key)
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream keyStoreStream = new FileInputStream(CERTIFICATE_FILE_NAME)) {
-            keyStore.load(keyStoreStream, CERTIFICATE_PASSWORD.toCharArray());
-        }
-
-        // 2. Load the new trust store containing the server's CA certificate
-        KeyStore trustStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream trustStoreStream = new FileInputStream(JAVA_TRUST_STORE)) {
-            trustStore.load(trustStoreStream, "euroclear".toCharArray());
-        }
+    public Authentication() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
 
-        // 3. Build the SSLContext using both keystores
-        SSLContext sslContext = SSLContexts.custom()
-            .loadKeyMaterial(keyStore, CERTIFICATE_PASSWORD.toCharArray())
-            .loadTrustMaterial(trustStore, null) // Use the new trust store
-            .build();
+    /**
+     * Blocking client presenting the certificate of the keystore to the server.
+     */
+    public static CloseableHttpClient createHttpClient(String certificateFile, String certificatePassword) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        SSLContext sslContext = createSSLContext(certificateFile, certificatePassword);
 
         RequestConfig requestConfig = RequestConfig.custom()
             .setConnectTimeout(Timeout.ofMinutes(3)) // How long to wait to establish a connection
@@ -78,70 +74,114 @@ public class Authentication {
             .build();
     }
 
-    public static void createConfidentialClientApplication() throws Exception {
+    /**
+     * Non-blocking client used by the async fetch engine.
+     * With ASYNC_HTTP2 (default) HTTP/2 is offered through ALPN: when the server accepts it, the requests are
+     * multiplexed as streams over a single TLS connection per route, otherwise the client falls back to the pool of
+     * MAX_IN_FLIGHT HTTP/1.1 connections. Without ASYNC_HTTP2 only HTTP/1.1 is used.
+     * The requests in flight are capped by the concurrency limiter of the engine, not by the client.
+     * The client must be started by the caller.
+     */
+    public static CloseableHttpAsyncClient createHttpAsyncClient(String certificateFile, String certificatePassword) throws Exception {
+        SSLContext sslContext = createSSLContext(certificateFile, certificatePassword);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setResponseTimeout(Timeout.ofMinutes(3))
+            .setConnectionRequestTimeout(Timeout.ofMinutes(3))
+            .build();
+
+        TlsStrategy tlsStrategy = ClientTlsStrategyBuilder.create()
+            .setSslContext(sslContext)
+            .setTlsVersions(TLS.V_1_3, TLS.V_1_2)
+            .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+            .setIoThreadCount(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))
+            .build();
+
+        AsyncClientConnectionManager cm = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(MAX_IN_FLIGHT)
+            .setMaxConnPerRoute(MAX_IN_FLIGHT)
+            .setTlsStrategy(tlsStrategy)
+            // How long to wait to establish a connection
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMinutes(3))
+                .build())
+            .setDefaultTlsConfig(TlsConfig.custom()
+                .setHandshakeTimeout(Timeout.ofMinutes(30))
+                .setSupportedProtocols(TLS.V_1_3, TLS.V_1_2)
+                .setVersionPolicy(ASYNC_HTTP2 ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                .build())
+            .build();
+
+        return HttpAsyncClients.custom()
+            .setConnectionManager(cm)
+            .setDefaultRequestConfig(requestConfig)
+            .setIOReactorConfig(ioReactorConfig)
+            // The server does not push, and does not need to be offered to
+            .setH2Config(H2Config.custom()
+                .setPushEnabled(false)
+                .build())
+            .build();
+    }
+
+    private static SSLContext createSSLContext(String certificateFile, String certificatePassword) throws Exception {
+        // 1. Load the client's keystore for key material (your private key)
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream keyStoreStream = new FileInputStream(certificateFile)) {
+            keyStore.load(keyStoreStream, certificatePassword.toCharArray());
+        }
+
+        // 2. Load the new trust store containing the server's CA certificate
+        KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream trustStoreStream = new FileInputStream(JAVA_TRUST_STORE)) {
+            trustStore.load(trustStoreStream, "euroclear".toCharArray());
+        }
+
+        // 3. Build the SSLContext using both keystores
+        SSLContext sslContext = SSLContexts.custom()
+            .loadKeyMaterial(keyStore, certificatePassword.toCharArray())
+            .loadTrustMaterial(trustStore, null) // Use the new trust store
+            .build();
+        return sslContext;
+    }
+
+    public static IConfidentialClientApplication createConfidentialClientApplication(String clientId, String certificateFile, String certificatePassword) throws Exception {
         // Load PKCS12 certificate - equivalent to C# X509CertificateLoader.LoadPkcs12FromFile
         KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        try (FileInputStream fis = new FileInputStream(CERTIFICATE_FILE_NAME)) {
-            keyStore.load(fis, CERTIFICATE_PASSWORD.toCharArray());
+        try (FileInputStream fis = new FileInputStream(certificateFile)) {
+            keyStore.load(fis, certificatePassword.toCharArray());
         }
 
         // Get the private key and certificate from the keystore
         String alias = keyStore.aliases().nextElement();
-        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, CERTIFICATE_PASSWORD.toCharArray());
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, certificatePassword.toCharArray());
         X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
 
         // Create MSAL client with certificate - equivalent to C# .WithCertificate(certificate)
-        app = ConfidentialClientApplication.builder(CLIENT_ID,
+        return ConfidentialClientApplication.builder(clientId,
                 ClientCredentialFactory.createFromCertificate(privateKey, certificate))
             .authority(AUTHORITY)
             .build();
     }
 
-    public static String getAccessTokenForCurrentThread() {
-        IAuthenticationResult token = currentToken.get();
-
-        try {
-            // Check if the token doesn't exist or is expired.
-            if (token == null) {
-                logger.infof("### Thread - %s, No token found. Acquiring new token...", Thread.currentThread().getName());
-                IAuthenticationResult result = createAuthenticationResult();
-                token = result;
-                currentToken.set(result);
-            } else {
-                Long futureExpiredDate = token.expiresOnDate().getTime();
-                Long currentTime = System.currentTimeMillis();
-                if (currentTime >= (futureExpiredDate - TOKEN_EXPIRATION_SECOND)) {
-                    logger.infof("### Thread - %s - acquiring a new token as renewal time is over: %s. Current time: %s", Thread.currentThread().getName(),token.expiresOnDate(),new Date(currentTime));
-                    IAuthenticationResult result = createAuthenticationResult();
-                    token = result;
-                    currentToken.set(result);
-                }
-            }
-            return token.accessToken();
-
-        } catch (Exception e) {
-            handleAuthenticationError(e);
-            throw new RuntimeException("Failed to acquire token", e);
-        }
-    }
-
-    private static IAuthenticationResult createAuthenticationResult() throws ExecutionException, InterruptedException {
-        IAuthenticationResult result;
+    /**
+     * Asynchronous acquisition of a new token for the application, a dummy token in dry-run mode.
+     */
+    static CompletableFuture<IAuthenticationResult> acquireToken(IConfidentialClientApplication app) {
         if (!isDryRun) {
+            Set<String> scopes = Collections.singleton(APPLICATION_ID + "/.default");
             ClientCredentialParameters parameters = ClientCredentialParameters.builder(scopes).build();
-            result = app.acquireToken(parameters).get();
-        } else {
-            // Add 20s to the current time
-            result = new SimpleAuthentication(20000L);
+            return app.acquireToken(parameters);
         }
-        logger.infof("### Thread - %s, Token: %s - expiring on: %s", Thread.currentThread().getName(), result.accessToken(), result.expiresOnDate());
-        return result;
+        // Add 20s to the current time
+        return CompletableFuture.completedFuture(new SimpleAuthentication(20000L));
     }
 
     /**
      * Handle authentication errors and provide graceful exit
      */
-    private static void handleAuthenticationError(Exception e) {
+    static void handleAuthenticationError(Exception e) {
         // Check if this is an MSAL service exception with invalid client secret
         if (e.getCause() instanceof MsalServiceException) {
             MsalServiceException msalException = (MsalServiceException) e.getCause();
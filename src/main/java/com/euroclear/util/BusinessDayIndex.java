@@ -0,0 +1,65 @@
+package com.euroclear.util;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Business days of a settlement calendar, precomputed once for a range of years.
+ * Bit i is set when the day i days after the 1st of January of the first year is a business day,
+ * so that the lookups and the iterations never evaluate the calendar rules again.
+ */
+public class BusinessDayIndex {
+
+    private final LocalDate first;
+    private final LocalDate last;
+    private final BitSet businessDays;
+
+    public BusinessDayIndex(SettlementCalendar calendar, int firstYear, int lastYear) {
+        this.first = LocalDate.of(firstYear, 1, 1);
+        this.last = LocalDate.of(lastYear, 12, 31);
+        int days = (int) (last.toEpochDay() - first.toEpochDay()) + 1;
+        this.businessDays = new BitSet(days);
+        LocalDate date = first;
+        for (int i = 0; i < days; i++, date = date.plusDays(1)) {
+            if (calendar.isBusinessDay(date)) {
+                businessDays.set(i);
+            }
+        }
+    }
+
+    /**
+     * Index covering the years of the given dates.
+     */
+    public static BusinessDayIndex of(SettlementCalendar calendar, LocalDate start, LocalDate end) {
+        return new BusinessDayIndex(calendar, start.getYear(), end.getYear());
+    }
+
+    public boolean isBusinessDay(LocalDate date) {
+        return businessDays.get(offset(date));
+    }
+
+    /**
+     * Business days from start to end, both included.
+     */
+    public Stream<LocalDate> businessDays(LocalDate start, LocalDate end) {
+        if (start.isAfter(end)) {
+            return Stream.empty();
+        }
+        int to = offset(end) + 1;
+        return IntStream.iterate(businessDays.nextSetBit(offset(start)), i -> i >= 0 && i < to, i -> businessDays.nextSetBit(i + 1))
+            .mapToObj(first::plusDays);
+    }
+
+    public int count(LocalDate start, LocalDate end) {
+        return start.isAfter(end) ? 0 : businessDays.get(offset(start), offset(end) + 1).cardinality();
+    }
+
+    private int offset(LocalDate date) {
+        if (date.isBefore(first) || date.isAfter(last)) {
+            throw new IllegalArgumentException("Date " + date + " out of the calendar index " + first + " - " + last);
+        }
+        return (int) (date.toEpochDay() - first.toEpochDay());
+    }
+}
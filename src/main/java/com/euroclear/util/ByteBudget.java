@@ -0,0 +1,124 @@
+package com.euroclear.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Budget of bytes shared by producers, which reserve the bytes of their elements before handing them over and wait
+ * while the budget is spent, and a consumer releasing them once the elements are gone. An element larger than the
+ * whole budget is accepted once nothing is reserved anymore, so that it can never wait forever.
+ * A ReentrantLock is used so that the blocked virtual threads do not pin their carrier.
+ */
+public class ByteBudget {
+
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long bytes;
+    private int blockedProducers;
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    public ByteBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid budget: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Registers the bytes and the blocked producers of the budget under the name.
+     */
+    public ByteBudget withMetrics(String name) {
+        Metrics.gauge(name + ".bytes", this::bytes);
+        Metrics.gauge(name + ".blockedProducers", () -> withLock(() -> blockedProducers));
+        Metrics.gauge(name + ".blockedMs", () -> TimeUnit.NANOSECONDS.toMillis(blockedNanos.get()));
+        return this;
+    }
+
+    public long bytes() {
+        return withLock(() -> bytes);
+    }
+
+    /**
+     * Reserves the bytes, waiting at most the timeout for other elements to release theirs.
+     * @return false when the bytes could not be reserved in time
+     */
+    public boolean reserve(long weight, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (!fits(weight)) {
+                long start = System.nanoTime();
+                long remaining = timeoutNanos;
+                blockedProducers++;
+                try {
+                    while (!fits(weight)) {
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        remaining = released.awaitNanos(remaining);
+                    }
+                } finally {
+                    blockedProducers--;
+                    blockedNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+            bytes += weight;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves the bytes, waiting as long as needed.
+     */
+    public void reserve(long weight) throws InterruptedException {
+        reserve(weight, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves the bytes only if they fit in the budget now.
+     */
+    public boolean tryReserve(long weight) {
+        lock.lock();
+        try {
+            if (!fits(weight)) {
+                return false;
+            }
+            bytes += weight;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(long weight) {
+        if (weight == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            bytes -= weight;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long weight) {
+        return bytes == 0 || bytes + weight <= maxBytes;
+    }
+
+    private <T> T withLock(Supplier<T> supplier) {
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.euroclear.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Blocking queue bounded by the bytes of its elements instead of their number, so that a burst of large payloads
+ * cannot fill the heap before the producers are slowed down.
+ * put() blocks while the element does not fit in the {@link ByteBudget}, offer() refuses it. The bytes are released
+ * by take(), poll() and drainTo(); the other ways of removing elements are not accounted and must not be used.
+ */
+public class ByteBudgetQueue<E> extends LinkedBlockingQueue<E> {
+
+    private final ByteBudget budget;
+    private final ToLongFunction<E> weigher;
+
+    /**
+     * @param maxBytes budget of the queued elements
+     * @param weigher bytes of an element, which must not change while it is queued
+     */
+    public ByteBudgetQueue(long maxBytes, ToLongFunction<E> weigher) {
+        this.budget = new ByteBudget(maxBytes);
+        this.weigher = weigher;
+    }
+
+    /**
+     * Registers the depth, the bytes and the blocked producers of the queue under the name.
+     */
+    public ByteBudgetQueue<E> withMetrics(String name) {
+        Metrics.gauge(name + ".depth", this::size);
+        budget.withMetrics(name);
+        return this;
+    }
+
+    public long bytes() {
+        return budget.bytes();
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException {
+        budget.reserve(weigher.applyAsLong(element));
+        super.put(element);
+    }
+
+    @Override
+    public boolean offer(E element) {
+        if (!budget.tryReserve(weigher.applyAsLong(element))) {
+            return false;
+        }
+        return super.offer(element);
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!budget.reserve(weigher.applyAsLong(element), unit.toNanos(timeout))) {
+            return false;
+        }
+        return super.offer(element);
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return released(super.take());
+    }
+
+    @Override
+    public E poll() {
+        return released(super.poll());
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return released(super.poll(timeout, unit));
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        List<E> drained = new ArrayList<>();
+        int count = super.drainTo(drained, maxElements);
+        long weight = 0;
+        for (E element : drained) {
+            weight += weigher.applyAsLong(element);
+        }
+        collection.addAll(drained);
+        budget.release(weight);
+        return count;
+    }
+
+    private E released(E element) {
+        if (element != null) {
+            budget.release(weigher.applyAsLong(element));
+        }
+        return element;
+    }
+}
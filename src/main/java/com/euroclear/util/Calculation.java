@@ -20,6 +20,13 @@ public class Calculation {
             .filter(date -> holidays == null || !holidays.contains(date));
     }
 
+    /**
+     * Business days of the settlement calendar from start to end, both included.
+     */
+    public static Stream<LocalDate> eachBusinessDay(LocalDate start, LocalDate end, BusinessDayIndex calendar) {
+        return calendar.businessDays(start, end);
+    }
+
     public static void processingDuration(Instant startTime) {
         Instant endTime = Instant.now();
         Duration duration = Duration.between(startTime, endTime);
@@ -0,0 +1,122 @@
+package com.euroclear.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Thread-safe formatting of the CSV cells, producing the same text as the former
+ * {@code DecimalFormat("0.############")} with the fr-BE symbols and the ISO date-time detection.
+ * <ul>
+ *     <li>numbers are rounded HALF_EVEN to 12 decimals and written with the fr-BE decimal comma,
+ *     straight from the BigDecimal or from the raw JSON integer token</li>
+ *     <li>texts are only parsed as dates when they have the shape of an ISO date-time,
+ *     so that ordinary strings never cost a DateTimeParseException</li>
+ * </ul>
+ */
+public class CellFormatter {
+
+    private static final int MAX_FRACTION_DIGITS = 12;
+    private static final DecimalFormatSymbols BE_SYMBOLS = new DecimalFormatSymbols(Locale.forLanguageTag("fr-BE"));
+    private static final char DECIMAL_SEPARATOR = BE_SYMBOLS.getDecimalSeparator();
+    private static final char MINUS_SIGN = BE_SYMBOLS.getMinusSign();
+    private static final DateTimeFormatter DATE_FORMATTER_OUT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    public CellFormatter() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static String formatNumber(BigDecimal value) {
+        StringBuilder sb = new StringBuilder(24);
+        appendNumber(sb, value);
+        return sb.toString();
+    }
+
+    public static void appendNumber(StringBuilder sb, BigDecimal value) {
+        BigDecimal rounded = value.scale() > MAX_FRACTION_DIGITS
+            ? value.setScale(MAX_FRACTION_DIGITS, RoundingMode.HALF_EVEN)
+            : value;
+        if (rounded.signum() == 0) {
+            // DecimalFormat keeps the sign of a negative number rounded to zero
+            if (value.signum() < 0) {
+                sb.append(MINUS_SIGN);
+            }
+            sb.append('0');
+            return;
+        }
+        if (rounded.scale() > 0) {
+            rounded = rounded.stripTrailingZeros();
+        }
+        String plain = rounded.toPlainString();
+        int start = sb.length();
+        sb.append(plain);
+        for (int i = start; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c == '.') {
+                sb.setCharAt(i, DECIMAL_SEPARATOR);
+            } else if (c == '-') {
+                sb.setCharAt(i, MINUS_SIGN);
+            }
+        }
+    }
+
+    /**
+     * Formats the text of a JSON integer token without going through BigDecimal.
+     * JSON integers have no leading zero nor '+', so the token is already in its plain form.
+     */
+    public static String formatIntegerToken(String token) {
+        if ("-0".equals(token)) {
+            return "0";
+        }
+        if (MINUS_SIGN != '-' && token.charAt(0) == '-') {
+            return MINUS_SIGN + token.substring(1);
+        }
+        return token;
+    }
+
+    /**
+     * An ISO date-time is reduced to its date (yyyy-MM-dd), any other text is trimmed.
+     */
+    public static String formatText(String text) {
+        if (!looksLikeIsoDateTime(text)) {
+            return text.trim();
+        }
+        try {
+            LocalDate date = LocalDate.parse(text, DateTimeFormatter.ISO_DATE_TIME);
+            // The shape guarantees a 4 digits year: the date is the first 10 characters
+            return text.charAt(0) == '+' || text.charAt(0) == '-'
+                ? date.format(DATE_FORMATTER_OUT)
+                : text.substring(0, 10);
+        } catch (DateTimeParseException e) {
+            return text.trim();
+        }
+    }
+
+    /**
+     * Cheap test on the characters: "yyyy-MM-ddTHH:mm" at least, or a signed year which
+     * is left to the full parser.
+     */
+    static boolean looksLikeIsoDateTime(String text) {
+        if (text.length() < 16) {
+            return false;
+        }
+        char first = text.charAt(0);
+        if (first == '+' || first == '-') {
+            return true;
+        }
+        return isDigit(first) && isDigit(text.charAt(1)) && isDigit(text.charAt(2)) && isDigit(text.charAt(3))
+            && text.charAt(4) == '-'
+            && isDigit(text.charAt(5)) && isDigit(text.charAt(6))
+            && text.charAt(7) == '-'
+            && isDigit(text.charAt(8)) && isDigit(text.charAt(9))
+            && (text.charAt(10) == 'T' || text.charAt(10) == 't');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
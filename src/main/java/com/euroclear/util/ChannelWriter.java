@@ -0,0 +1,167 @@
+package com.euroclear.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UTF-8 writer appending to a file through a FileChannel and a large direct buffer.
+ * The characters are encoded straight from the CharSequence into the direct buffer, which is written with one call to
+ * the channel when it is full or flushed, instead of the many 8 KB writes of a BufferedWriter. The buffer is only
+ * allocated by the first write, so that the files of the months without rows do not hold one. What a flush does is
+ * set by the durability:
+ * <ul>
+ *     <li>BATCH: the buffer is written to the file, i.e. to the page cache of the OS, as a BufferedWriter does</li>
+ *     <li>FORCE: the buffer is written, and the file is forced to the storage once forceBytes are written or
+ *     forceMillis after the last force</li>
+ * </ul>
+ * A flush always writes the buffer: the rows of a commit must be in the file before their pairs are journaled.
+ * A surrogate pair must not be split between two calls. Not thread safe: the callers own the writer.
+ */
+public class ChannelWriter extends Writer {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    public enum Durability {
+        BATCH, FORCE
+    }
+
+    /**
+     * Durability of the files of a ChannelWriter.
+     */
+    public record Policy(Durability durability, long forceBytes, long forceMillis) {}
+
+    private static final AtomicLong writes = new AtomicLong();
+    private static final AtomicLong forces = new AtomicLong();
+
+    static {
+        Metrics.gauge("output.channelWrites", writes::get);
+        Metrics.gauge("output.forces", forces::get);
+    }
+
+    private final FileChannel channel;
+    private final int bufferSize;
+    private ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Policy policy;
+    private final long forceNanos;
+    private long unforcedBytes;
+    private long lastForceNanos = System.nanoTime();
+
+    public ChannelWriter(Path path, Policy policy) throws IOException {
+        this(path, policy, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelWriter(Path path, Policy policy, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+        this.forceNanos = TimeUnit.MILLISECONDS.toNanos(policy.forceMillis());
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(text, offset, offset + length));
+    }
+
+    @Override
+    public Writer append(CharSequence text) throws IOException {
+        encode(CharBuffer.wrap(text == null ? "null" : text));
+        return this;
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        ensureOpen();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the channel, then forces the file when forceBytes are written since the last force.
+     */
+    private void drain() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            unforcedBytes += channel.write(buffer);
+            writes.incrementAndGet();
+        }
+        buffer.clear();
+        if (policy.durability() == Durability.FORCE && unforcedBytes >= policy.forceBytes()) {
+            force();
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        forces.incrementAndGet();
+        unforcedBytes = 0;
+        lastForceNanos = System.nanoTime();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        switch (policy.durability()) {
+            case BATCH -> drain();
+            case FORCE -> {
+                drain();
+                if (unforcedBytes > 0 && System.nanoTime() - lastForceNanos >= forceNanos) {
+                    force();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            drain();
+            if (policy.durability() == Durability.FORCE && unforcedBytes > 0) {
+                force();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Writer closed");
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.euroclear.util;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker of the requests sent to the server, driven by the outcomes of the latest requests.
+ * <ul>
+ *     <li>CLOSED: the requests go through. The circuit opens when the failures (exception, 5xx) or the slow requests
+ *     reach the failure rate over the sliding window of the last WINDOW requests</li>
+ *     <li>OPEN: no request is sent; the callers are parked in acquire() until the open delay is over, so that their
+ *     work items wait instead of failing</li>
+ *     <li>HALF_OPEN: HALF_OPEN_REQUESTS trial requests are let through. The circuit closes once they all succeed,
+ *     and opens again on the first failure</li>
+ * </ul>
+ * Each permit carries the period of the circuit it was given in: only the outcomes of the permits of the current
+ * period are counted, so that the requests sent before an opening, which come back while the circuit is half open,
+ * are not taken for trial requests, and a late trial does not count in the window of the closed circuit.
+ * A 429 is a quota signal handled by the limiters, not a failure of the server. A ReentrantLock is used instead of
+ * synchronized so that the parked virtual threads do not pin their carrier.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    private static final int HALF_OPEN_REQUESTS = 5;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Permit of a request, given by acquire() and handed back to record() or cancel().
+     * @param period period of the circuit the permit was given in, changed by each transition
+     * @param trial true for a trial request of the half-open circuit
+     */
+    public record Permit(long period, boolean trial) {}
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final int minRequests;
+    private final double failureRate;
+    private final long slowRequestNanos;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private long period;
+    private long openUntilNanos;
+    private long halfOpenSinceNanos;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private int parked;
+    private long opened;
+
+    // Ring buffer of the outcomes of the last requests while closed, with the number of failed and slow ones
+    private final boolean[] failedOutcomes;
+    private final boolean[] slowOutcomes;
+    private long outcomeCount;
+    private int failures;
+    private int slowRequests;
+
+    /**
+     * @param window number of requests of the sliding window, at least half of them being needed to open the circuit
+     * @param failureRatePercent rate of failed, or of slow, requests opening the circuit
+     * @param slowRequestMs a request answered after this delay counts as a slow one
+     * @param openSeconds time during which no request is sent once the circuit is open
+     */
+    public CircuitBreaker(int window, double failureRatePercent, long slowRequestMs, long openSeconds) {
+        if (window < 2 || failureRatePercent <= 0 || failureRatePercent > 100) {
+            throw new IllegalArgumentException("Invalid circuit breaker: window " + window + " - failure rate " + failureRatePercent);
+        }
+        this.failedOutcomes = new boolean[window];
+        this.slowOutcomes = new boolean[window];
+        this.minRequests = window / 2;
+        this.failureRate = failureRatePercent / 100.0;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMs);
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+
+        Metrics.gauge("circuit.state", () -> getState().ordinal());
+        Metrics.gauge("circuit.opened", () -> withLock(() -> opened));
+        Metrics.gauge("circuit.parked", () -> withLock(() -> parked));
+        Metrics.gauge("circuit.failureRate", () -> withLock(() -> rate(failures)));
+        Metrics.gauge("circuit.slowRate", () -> withLock(() -> rate(slowRequests)));
+    }
+
+    /**
+     * Blocks while the circuit is open, or while the trial requests of the half-open circuit are in flight.
+     * Each call must be followed by one call to record(), or to cancel() when the request was not sent.
+     */
+    public Permit acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (state == State.OPEN) {
+                    long remaining = openUntilNanos - System.nanoTime();
+                    if (remaining > 0) {
+                        parked++;
+                        try {
+                            changed.awaitNanos(remaining);
+                        } finally {
+                            parked--;
+                        }
+                        continue;
+                    }
+                    transition(State.HALF_OPEN, "open delay over, sending " + HALF_OPEN_REQUESTS + " trial requests");
+                    halfOpenSinceNanos = System.nanoTime();
+                    trialsStarted = 0;
+                    trialsSucceeded = 0;
+                }
+                if (state == State.CLOSED) {
+                    return new Permit(period, false);
+                }
+                if (trialsStarted < HALF_OPEN_REQUESTS) {
+                    trialsStarted++;
+                    return new Permit(period, true);
+                }
+                long remaining = halfOpenSinceNanos + openNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    // Trial requests without an outcome for too long: let other ones replace them
+                    halfOpenSinceNanos = System.nanoTime();
+                    trialsStarted = trialsSucceeded;
+                    continue;
+                }
+                parked++;
+                try {
+                    changed.awaitNanos(remaining);
+                } finally {
+                    parked--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Feeds the breaker with the outcome of a request.
+     * @param statusCode HTTP status, or -1 when the request failed without a response
+     * @param latencyNanos time between the sending of the request and its response or failure
+     */
+    public void record(Permit permit, int statusCode, long latencyNanos) {
+        boolean failed = statusCode < 0 || statusCode >= HttpStatus.SC_SERVER_ERROR;
+        boolean slow = latencyNanos >= slowRequestNanos;
+        lock.lock();
+        try {
+            if (permit.period() != period) {
+                // Sent in a previous period of the circuit: says nothing of the current one
+                return;
+            }
+            switch (state) {
+                case CLOSED -> {
+                    int slot = (int) (outcomeCount++ % failedOutcomes.length);
+                    if (outcomeCount > failedOutcomes.length) {
+                        failures -= failedOutcomes[slot] ? 1 : 0;
+                        slowRequests -= slowOutcomes[slot] ? 1 : 0;
+                    }
+                    failedOutcomes[slot] = failed;
+                    slowOutcomes[slot] = slow;
+                    failures += failed ? 1 : 0;
+                    slowRequests += slow ? 1 : 0;
+                    if (windowSize() >= minRequests
+                        && (rate(failures) >= failureRate || rate(slowRequests) >= failureRate)) {
+                        open(String.format("%.0f%% failed - %.0f%% slow over the last %d requests",
+                            rate(failures) * 100, rate(slowRequests) * 100, windowSize()));
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (failed || slow) {
+                        open("trial request " + (failed ? "failed" : "slow"));
+                    } else if (++trialsSucceeded >= HALF_OPEN_REQUESTS) {
+                        outcomeCount = 0;
+                        failures = 0;
+                        slowRequests = 0;
+                        transition(State.CLOSED, trialsSucceeded + " trial requests succeeded");
+                    }
+                }
+                case OPEN -> {
+                    // Not reached: a permit is never given while open
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands back the permit of a request which was not sent, e.g. its token could not be obtained, so that a trial
+     * slot is given to another request.
+     */
+    public void cancel(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.trial() && permit.period() == period && trialsStarted > trialsSucceeded) {
+                trialsStarted--;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        return withLock(() -> state);
+    }
+
+    private void open(String reason) {
+        openUntilNanos = System.nanoTime() + openNanos;
+        opened++;
+        transition(State.OPEN, reason + ", parking the requests for " + TimeUnit.NANOSECONDS.toSeconds(openNanos) + " s");
+    }
+
+    private void transition(State next, String reason) {
+        logger.infof("### Circuit %s -> %s: %s", state, next, reason);
+        state = next;
+        period++;
+        changed.signalAll();
+    }
+
+    private int windowSize() {
+        return (int) Math.min(outcomeCount, failedOutcomes.length);
+    }
+
+    private double rate(int count) {
+        int requests = windowSize();
+        return requests == 0 ? 0.0 : (double) count / requests;
+    }
+
+    private <T> T withLock(Supplier<T> supplier) {
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.euroclear.util;
+
+import com.microsoft.aad.msal4j.IAuthenticationResult;
+import com.microsoft.aad.msal4j.IConfidentialClientApplication;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.euroclear.LiquidityDriveNewClient.isDryRun;
+import static com.euroclear.util.ApiConfig.TOKEN_EXPIRATION_SECOND;
+
+/**
+ * One subscription of the API: client id and API key, keystore used both for the MSAL client assertion and as the
+ * TLS client certificate, with its own application, token cache, HTTP clients and rate limiter.
+ * The application and the HTTP clients are created on first use.
+ * <p>
+ * A 429 pauses the credential for the Retry-After of the server, or with an exponential backoff when there is none.
+ */
+public class Credential implements Closeable {
+    private static final Logger logger = Logger.getLogger(Credential.class);
+
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final String clientId;
+    private final String apiKey;
+    private final String certificateFile;
+    private final String certificatePassword;
+    private final RateLimiter rateLimiter;
+    private final TokenCache tokenCache;
+
+    // Not a monitor: the clients are created by the virtual threads of the producers
+    private final ReentrantLock lock = new ReentrantLock();
+    private IConfidentialClientApplication app;
+    private CloseableHttpClient httpClient;
+    private CloseableHttpAsyncClient httpAsyncClient;
+
+    private final AtomicLong pausedUntilNanos = new AtomicLong(System.nanoTime());
+    private final AtomicInteger consecutiveThrottles = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+
+    public Credential(String name, String clientId, String apiKey, String certificateFile, String certificatePassword, RateLimiter rateLimiter) {
+        this.name = name;
+        this.clientId = clientId;
+        this.apiKey = apiKey;
+        this.certificateFile = certificateFile;
+        this.certificatePassword = certificatePassword;
+        this.rateLimiter = rateLimiter;
+        this.tokenCache = new TokenCache(name, this::acquireToken, TOKEN_EXPIRATION_SECOND);
+
+        Metrics.gauge("credential." + name + ".requests", requests::get);
+        Metrics.gauge("credential." + name + ".throttled", throttles::get);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Creates the MSAL application of the credential, so that a wrong keystore is reported at startup.
+     */
+    public void createApplication() throws Exception {
+        lock.lock();
+        try {
+            if (app == null && !isDryRun) {
+                app = Authentication.createConfidentialClientApplication(clientId, certificateFile, certificatePassword);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the access token of the credential, renewed in the background by its token cache.
+     */
+    public String getAccessToken() {
+        try {
+            return tokenCache.getAccessToken();
+        } catch (Exception e) {
+            Authentication.handleAuthenticationError(e);
+            throw new RuntimeException("Failed to acquire token for the credential " + name, e);
+        }
+    }
+
+    private CompletableFuture<IAuthenticationResult> acquireToken() {
+        try {
+            createApplication();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return Authentication.acquireToken(app);
+    }
+
+    public CloseableHttpClient httpClient() throws Exception {
+        lock.lock();
+        try {
+            if (httpClient == null) {
+                httpClient = isDryRun ? HttpClients.createDefault() : Authentication.createHttpClient(certificateFile, certificatePassword);
+            }
+            return httpClient;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the async client of the credential, started
+     */
+    public CloseableHttpAsyncClient httpAsyncClient() throws Exception {
+        lock.lock();
+        try {
+            if (httpAsyncClient == null) {
+                httpAsyncClient = isDryRun ? HttpAsyncClients.createDefault() : Authentication.createHttpAsyncClient(certificateFile, certificatePassword);
+                httpAsyncClient.start();
+            }
+            return httpAsyncClient;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how long a request would wait for this credential now: its pause, or else its rate limiter
+     */
+    long waitNanos() {
+        return Math.max(pauseNanos(), rateLimiter.waitNanos());
+    }
+
+    long pauseNanos() {
+        return Math.max(0L, pausedUntilNanos.get() - System.nanoTime());
+    }
+
+    void sent() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Pauses the credential after a 429.
+     * @param retryAfter value of the Retry-After header, if any
+     */
+    void throttled(String retryAfter) {
+        int throttlesInARow = consecutiveThrottles.incrementAndGet();
+        long pause = AdaptiveConcurrencyLimiter.parseRetryAfter(retryAfter);
+        if (pause <= 0) {
+            pause = Math.min(MAX_BACKOFF_NANOS, BASE_BACKOFF_NANOS << Math.min(throttlesInARow - 1, 6));
+        }
+        pausedUntilNanos.accumulateAndGet(System.nanoTime() + pause, Math::max);
+        throttles.incrementAndGet();
+        logger.infof("### Credential %s throttled, paused for %d ms", name, TimeUnit.NANOSECONDS.toMillis(pause));
+    }
+
+    void succeeded() {
+        consecutiveThrottles.set(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (httpClient != null) {
+                httpClient.close();
+            }
+            if (httpAsyncClient != null) {
+                httpAsyncClient.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.euroclear.util;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.euroclear.LiquidityDriveNewClient.isDryRun;
+import static com.euroclear.util.ApiConfig.*;
+
+/**
+ * Credentials among which the requests are spread, to add up the quotas of several subscriptions.
+ * Each request takes the credential whose rate limiter grants a permit the soonest, the one with the most quota
+ * remaining on a tie, the credentials paused after a 429 being passed over. A request only waits when all the
+ * credentials are exhausted or paused.
+ */
+public class CredentialPool implements Closeable {
+    private static final Logger logger = Logger.getLogger(CredentialPool.class);
+
+    private final List<Credential> credentials;
+
+    public CredentialPool(List<Credential> credentials) {
+        if (credentials.isEmpty()) {
+            throw new IllegalArgumentException("At least one credential is required");
+        }
+        this.credentials = List.copyOf(credentials);
+    }
+
+    /**
+     * Credentials of CREDENTIAL_SETS, or the single credential of CLIENT_ID and API_KEY.
+     */
+    public static CredentialPool fromEnvironment() throws Exception {
+        List<Credential> credentials = new ArrayList<>();
+        if (CREDENTIAL_SETS.isEmpty()) {
+            credentials.add(new Credential("default", CLIENT_ID, API_KEY, CERTIFICATE_FILE_NAME, CERTIFICATE_PASSWORD,
+                new RateLimiter(RATE_LIMIT_RPS, RATE_LIMIT_BURST)));
+            logger.infof("### Rate limit: %.2f requests/s - burst: %d", RATE_LIMIT_RPS, RATE_LIMIT_BURST);
+        } else {
+            for (String name : CREDENTIAL_SETS) {
+                double rps = Optional
+                    .ofNullable(getCredentialEnv("RATE_LIMIT_RPS", name))
+                    .map(s -> Double.parseDouble(s))
+                    .orElse(RATE_LIMIT_RPS);
+                int burst = Optional
+                    .ofNullable(getCredentialEnv("RATE_LIMIT_BURST", name))
+                    .map(s -> Integer.parseInt(s))
+                    .orElse(RATE_LIMIT_BURST);
+                credentials.add(new Credential(name,
+                    getCredentialEnv("CLIENT_ID", name),
+                    getCredentialEnv("API_KEY", name),
+                    getCredentialEnv("CERTIFICATE_FILE_NAME", name),
+                    getCredentialEnv("CERTIFICATE_PASSWORD", name),
+                    new RateLimiter(rps, burst)));
+                logger.infof("### Credential %s - rate limit: %.2f requests/s - burst: %d", name, rps, burst);
+            }
+        }
+        if (!isDryRun) {
+            for (Credential credential : credentials) {
+                credential.createApplication();
+            }
+        }
+        return new CredentialPool(credentials);
+    }
+
+    public int size() {
+        return credentials.size();
+    }
+
+    /**
+     * Blocks until one of the credentials can send a request, and takes a permit of its rate limiter.
+     */
+    public Credential acquire() throws InterruptedException {
+        while (true) {
+            Credential best = null;
+            long bestWait = Long.MAX_VALUE;
+            double bestPermits = 0;
+            for (Credential credential : credentials) {
+                long wait = credential.waitNanos();
+                double permits = credential.getRateLimiter().availablePermits();
+                if (wait < bestWait || (wait == bestWait && permits > bestPermits)) {
+                    best = credential;
+                    bestWait = wait;
+                    bestPermits = permits;
+                }
+            }
+
+            if (bestWait == 0) {
+                // Another request may have taken the last permit in the meantime: look again
+                if (best.getRateLimiter().tryAcquire()) {
+                    best.sent();
+                    return best;
+                }
+                continue;
+            }
+            long pause = best.pauseNanos();
+            if (pause > 0) {
+                // All the credentials are paused
+                TimeUnit.NANOSECONDS.sleep(pause);
+                continue;
+            }
+            // All the credentials are exhausted: queue on the one replenished first
+            long wait = best.getRateLimiter().reserve();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            best.sent();
+            return best;
+        }
+    }
+
+    /**
+     * Takes a permit of a credential which can send a request right now, without waiting.
+     * @return the credential, or null when all the credentials are exhausted or paused
+     */
+    public Credential tryAcquire() {
+        for (Credential credential : credentials) {
+            if (credential.pauseNanos() == 0 && credential.getRateLimiter().tryAcquire()) {
+                credential.sent();
+                return credential;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Feeds the credential with the status of its response.
+     * @return true when a 429 was absorbed by pausing the credential: with several credentials, the quota of one
+     * subscription is exhausted but the server is not overloaded, so the caller must not slow the other credentials down.
+     * A single credential is throttled by the concurrency limiter as a whole, and false is always returned.
+     */
+    public boolean absorbs(Credential credential, int statusCode, String retryAfter) {
+        if (credentials.size() == 1) {
+            return false;
+        }
+        if (statusCode == HttpStatus.SC_TOO_MANY_REQUESTS) {
+            credential.throttled(retryAfter);
+            return true;
+        }
+        if (statusCode > 0) {
+            credential.succeeded();
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Credential credential : credentials) {
+            credential.close();
+        }
+    }
+}
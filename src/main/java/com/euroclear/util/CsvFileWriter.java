@@ -8,7 +8,7 @@ import java.nio.file.StandardOpenOption;
 
 public class CsvFileWriter implements Closeable, Flushable {
 
-    private final BufferedWriter writer;
+    private final Writer writer;
 
     /**
      * Modern constructor using java.nio.Path. This is the recommended one to use.
@@ -21,6 +21,17 @@ public class CsvFileWriter implements Closeable, Flushable {
             StandardOpenOption.CREATE, StandardOpenOption.APPEND);
     }
 
+    /**
+     * Constructor writing through a FileChannel, with the durability of the policy.
+     * @param path The path to the output file.
+     * @param policy The durability of the file, or null to use a BufferedWriter as the constructor above.
+     * @throws IOException
+     */
+    public CsvFileWriter(Path path, ChannelWriter.Policy policy) throws IOException {
+        this.writer = policy == null ? Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND) : new ChannelWriter(path, policy);
+    }
+
     /**
      * Legacy constructor using java.io.File.
      * @param file The file to write to.
@@ -36,7 +47,7 @@ public class CsvFileWriter implements Closeable, Flushable {
      */
     public void writeLine(String line) throws IOException {
         writer.write(line);
-        writer.newLine();
+        writer.write(System.lineSeparator());
     }
 
     /**
@@ -46,6 +57,13 @@ public class CsvFileWriter implements Closeable, Flushable {
         writer.write(content);
     }
 
+    /**
+     * Write raw content without copying it to a String first, when the underlying writer allows it.
+     */
+    public void write(CharSequence content) throws IOException {
+        writer.append(content);
+    }
+
     @Override
     public void flush() throws IOException {
         writer.flush();
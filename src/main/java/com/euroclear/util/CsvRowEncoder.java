@@ -0,0 +1,66 @@
+package com.euroclear.util;
+
+import static com.euroclear.util.LiquidityRecord.DELIM;
+
+/**
+ * Writes the CSV rows straight into the output buffer, without building a quoted String per cell.
+ * Every cell is quoted and its internal quotes doubled, as done by {@link Parsing#escapeCSV(String)}.
+ * The cells shared by all the rows of a response (RequestedISIN, RequestedDate and FIXED_PATHS) are
+ * encoded once as a prefix, then copied as a block in front of every transaction.
+ */
+public class CsvRowEncoder {
+
+    public CsvRowEncoder() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Appends a quoted, escaped cell. A null value is written as an empty cell.
+     */
+    public static void appendCell(StringBuilder sb, String value) {
+        sb.append('"');
+        if (value != null) {
+            int from = 0;
+            int quote = value.indexOf('"');
+            while (quote >= 0) {
+                sb.append(value, from, quote + 1).append('"');
+                from = quote + 1;
+                quote = value.indexOf('"', from);
+            }
+            sb.append(value, from, value.length());
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends the cells separated by the delimiter, the first one without a leading delimiter.
+     */
+    public static void appendCells(StringBuilder sb, String[] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                sb.append(DELIM);
+            }
+            appendCell(sb, cells[i]);
+        }
+    }
+
+    /**
+     * Appends a full row: the encoded prefix, then the cells, then the line separator.
+     */
+    public static void appendRow(StringBuilder sb, CharSequence prefix, String[] cells) {
+        sb.append(prefix);
+        for (String cell : cells) {
+            sb.append(DELIM);
+            appendCell(sb, cell);
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Appends a full row whose cells following the prefix are already encoded,
+     * each one with its leading delimiter.
+     */
+    public static void appendRow(StringBuilder sb, CharSequence prefix, CharSequence encodedCells, int start, int end) {
+        sb.append(prefix).append(encodedCells, start, end).append('\n');
+    }
+}
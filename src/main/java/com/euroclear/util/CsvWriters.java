@@ -41,16 +41,32 @@ public class CsvWriters {
     }
 
     public static Map<String, CsvFileWriter> createMonthlyWriters(LocalDate start, LocalDate end, Path outDir) throws IOException {
+        return createMonthlyWriters(start, end, outDir, "");
+    }
+
+    /**
+     * @param suffix appended to the name of the monthly files, e.g. "-shard-1" for "2025-01-shard-1.csv"
+     */
+    public static Map<String, CsvFileWriter> createMonthlyWriters(LocalDate start, LocalDate end, Path outDir, String suffix) throws IOException {
+        return createMonthlyWriters(start, end, outDir, suffix, null);
+    }
+
+    /**
+     * @param policy durability of the files written through a FileChannel, or null to use a BufferedWriter
+     */
+    public static Map<String, CsvFileWriter> createMonthlyWriters(LocalDate start, LocalDate end, Path outDir, String suffix,
+                                                                  ChannelWriter.Policy policy) throws IOException {
         Map<String, CsvFileWriter> writers = new HashMap<>();
-        LocalDate current = start;
+        // Iterate on the first day of the months so that the month of the end date is never skipped
+        LocalDate current = start.withDayOfMonth(1);
         while (!current.isAfter(end)) {
             String monthKey = current.format(DateTimeFormatter.ofPattern("yyyy-MM"));
             if (!writers.containsKey(monthKey)) {
-                Path filePath = outDir.resolve(monthKey + ".csv");
+                Path filePath = outDir.resolve(monthKey + suffix + ".csv");
 
                 // Check if the file is new or empty before writing the header
                 boolean needsHeader = !Files.exists(filePath) || Files.size(filePath) == 0;
-                CsvFileWriter writer = new CsvFileWriter(filePath);
+                CsvFileWriter writer = new CsvFileWriter(filePath, policy);
                 writers.put(monthKey, writer);
 
                 if (needsHeader) {
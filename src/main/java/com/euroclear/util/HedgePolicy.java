@@ -0,0 +1,122 @@
+package com.euroclear.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides when a request still unanswered is sent a second time (hedged), the first response of the two being used.
+ * <ul>
+ *     <li>the hedge delay is a percentile (e.g. p95) of the latest latencies, so that only the slowest requests are hedged</li>
+ *     <li>each request earns budgetPercent / 100 of a hedge and each hedge spends one, so that the hedges never add more
+ *     than budgetPercent of extra load, whatever the latency of the server</li>
+ * </ul>
+ * No request is hedged before MIN_SAMPLES latencies are known.
+ */
+public class HedgePolicy {
+
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int PERCENTILE_EVERY = 32;
+    private static final int MIN_SAMPLES = 32;
+    // Hedges which can be sent at once after a calm period
+    private static final double MAX_BUDGET = 10.0;
+
+    private final double percentile;
+    private final double budgetPerRequest;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ring buffer of the latest latencies, used to compute the percentile
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+    private double budget;
+    private volatile long delayNanos = Long.MAX_VALUE;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+
+    /**
+     * @param percentile percentile of the latencies after which a request is hedged, from 0 to 100
+     * @param budgetPercent maximum number of hedges, in percentage of the requests
+     */
+    public HedgePolicy(double percentile, double budgetPercent) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid hedge percentile: " + percentile);
+        }
+        if (budgetPercent < 0) {
+            throw new IllegalArgumentException("Invalid hedge budget: " + budgetPercent);
+        }
+        this.percentile = percentile;
+        this.budgetPerRequest = budgetPercent / 100.0;
+
+        Metrics.gauge("hedge.delayMs", () -> delayNanos == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        Metrics.gauge("hedge.sent", hedged::get);
+        Metrics.gauge("hedge.won", won::get);
+        Metrics.gauge("hedge.denied", denied::get);
+    }
+
+    /**
+     * @return how long to wait for the response of a request before hedging it, Long.MAX_VALUE while the latencies are unknown
+     */
+    public long delayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Records the latency of an answered request, which earns its share of the hedging budget.
+     */
+    public void record(long latencyNanos) {
+        lock.lock();
+        try {
+            budget = Math.min(MAX_BUDGET, budget + budgetPerRequest);
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latencyNanos;
+            if (latencyCount >= MIN_SAMPLES && latencyCount % PERCENTILE_EVERY == 0) {
+                long[] window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+                Arrays.sort(window);
+                delayNanos = window[Math.max(0, (int) Math.ceil(window.length * percentile / 100.0) - 1)];
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a hedge from the budget.
+     * @return false when the budget is spent: the request must not be hedged
+     */
+    public boolean tryHedge() {
+        lock.lock();
+        try {
+            if (budget < 1.0) {
+                denied.incrementAndGet();
+                return false;
+            }
+            budget -= 1.0;
+            hedged.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a hedge taken by tryHedge() but not sent.
+     */
+    public void refund() {
+        lock.lock();
+        try {
+            budget = Math.min(MAX_BUDGET, budget + 1.0);
+            hedged.decrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a hedge which answered before the request it hedged.
+     */
+    public void won() {
+        won.incrementAndGet();
+    }
+}
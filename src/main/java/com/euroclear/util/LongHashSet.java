@@ -0,0 +1,76 @@
+package com.euroclear.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs with open addressing and linear probing, 8 bytes per slot instead of a boxed Long
+ * and a HashMap node per element. 0 marks a free slot and cannot be stored. Not thread-safe.
+ */
+public class LongHashSet {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.slots = new long[capacity];
+    }
+
+    /**
+     * @return true when the value was not already in the set
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("0 cannot be stored");
+        }
+        int mask = slots.length - 1;
+        int i = index(value, mask);
+        while (slots[i] != 0) {
+            if (slots[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+        if (++size > slots.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        int mask = slots.length - 1;
+        int i = index(value, mask);
+        while (slots[i] != 0) {
+            if (slots[i] == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] previous = slots;
+        slots = new long[previous.length * 2];
+        int mask = slots.length - 1;
+        Arrays.stream(previous).filter(value -> value != 0).forEach(value -> {
+            int i = index(value, mask);
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = value;
+        });
+    }
+
+    private static int index(long value, int mask) {
+        // Fibonacci hashing: spread the high bits over the low bits kept by the mask
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,73 @@
+package com.euroclear.util;
+
+import org.jboss.logging.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal registry of gauges, reported periodically in the log.
+ * Components register a supplier under a dotted name (e.g. "concurrency.limit") and the
+ * reporter prints all the current values on one line.
+ */
+public class Metrics {
+    private static final Logger logger = Logger.getLogger(Metrics.class);
+
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter;
+
+    public Metrics() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static void gauge(String name, Supplier<Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static Number value(String name) {
+        Supplier<Number> supplier = gauges.get(name);
+        return supplier == null ? null : supplier.get();
+    }
+
+    public static synchronized void startReporter(long periodSeconds) {
+        if (reporter != null || periodSeconds <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsReporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(Metrics::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        report();
+    }
+
+    public static void report() {
+        if (gauges.isEmpty()) {
+            return;
+        }
+        String line = gauges.entrySet().stream()
+            .map(e -> e.getKey() + "=" + format(e.getValue().get()))
+            .collect(Collectors.joining(", "));
+        logger.infof("### Metrics: %s", line);
+    }
+
+    private static String format(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            return String.format("%.2f", value.doubleValue());
+        }
+        return String.valueOf(value);
+    }
+}
@@ -1,28 +1,38 @@
 package com.euroclear.util;
 
 import com.euroclear.QueueItem;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.jboss.logging.Logger;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
+import static com.euroclear.util.CsvRowEncoder.appendCell;
+import static com.euroclear.util.CsvRowEncoder.appendCells;
+import static com.euroclear.util.CsvRowEncoder.appendRow;
 import static com.euroclear.util.LiquidityRecord.*;
 
 public class Parsing {
     private static final Logger logger = Logger.getLogger(Parsing.class);
 
     private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final JsonFactory jsonFactory = objectMapper.getFactory();
 
     // --- OPTIMIZATION: Pre-process the JSON paths once ---
     private static final String[] COMPILED_FIXED_PATHS = Stream.of(FIXED_PATHS)
@@ -33,68 +43,244 @@ public class Parsing {
         .map(path -> "/" + path.replace("[*]", "").replace("['", "/").replace("']", ""))
         .toArray(String[]::new);
 
-    // --- FORMATTERS for C# style conversion ---
+    // --- Same paths as a tree of field names, walked by the streaming parser ---
+    private static final PathNode PATH_TREE = compilePathTree();
+    private static final Map<String, Integer> EXPAND_FIELD_INDEX = new HashMap<>();
+    static {
+        for (int i = 0; i < EXPAND_FIELDS.length; i++) {
+            EXPAND_FIELD_INDEX.put(EXPAND_FIELDS[i], i);
+        }
+    }
+
+    // --- FORMATTERS for C# style conversion, see CellFormatter for the numbers and the texts ---
     private static final DateTimeFormatter DATE_FORMATTER_OUT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DecimalFormatSymbols BE_SYMBOLS = new DecimalFormatSymbols(Locale.forLanguageTag("fr-BE"));
-    private static final DecimalFormat NUMBER_FORMATTER = new DecimalFormat("0.############", BE_SYMBOLS);
 
-    public static StringBuilder generateCSVfromJSON(QueueItem item) {
+    /**
+     * @throws IOException when the body is not valid JSON
+     */
+    public static StringBuilder generateCSVfromJSON(QueueItem item) throws IOException {
         StringBuilder buffer = new StringBuilder(8192);
-        try {
-            JsonNode json = objectMapper.readTree(item.json());
-            List<String> fixedCells = new ArrayList<>(FIXED_PATHS.length + 2);
-            fixedCells.add(item.isin());
-            fixedCells.add(item.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
-
-            for (String compiledPath : COMPILED_FIXED_PATHS) {
-                //fixedCells.add(formatJsonValue(json.at("/" + path.replace(".", "/").replace("['", "/").replace("']", ""))));
-                fixedCells.add(formatJsonValue(json.at(compiledPath)));
-            }
+        // Parsed straight from the UTF-8 bytes of the response
+        JsonNode json = objectMapper.readTree(item.json().array(), 0, item.json().length());
+
+        // --- OPTIMIZATION: Encode the fixed cells once, then copy them in front of every row ---
+        StringBuilder prefix = new StringBuilder(1024);
+        appendCell(prefix, item.isin());
+        prefix.append(DELIM);
+        appendCell(prefix, item.date().format(DATE_FORMATTER_OUT));
+        for (String compiledPath : COMPILED_FIXED_PATHS) {
+            prefix.append(DELIM);
+            appendCell(prefix, formatJsonValue(json.at(compiledPath)));
+        }
 
-            JsonNode txItems = selectFirstNonEmpty(json, COMPILED_EXPAND_BASE_CANDIDATES);
-            if (txItems == null || !txItems.isArray() || txItems.isEmpty()) {
-                List<String> row = new ArrayList<>(fixedCells);
+        String[] cells = new String[EXPAND_FIELDS.length];
+        JsonNode txItems = selectFirstNonEmpty(json, COMPILED_EXPAND_BASE_CANDIDATES);
+        if (txItems == null || !txItems.isArray() || txItems.isEmpty()) {
+            Arrays.fill(cells, "");
+            appendRow(buffer, prefix, cells);
+        } else {
+            for (JsonNode txItem : txItems) {
                 for (int i = 0; i < EXPAND_FIELDS.length; i++) {
-                    row.add("");
+                    cells[i] = formatJsonValue(txItem.get(EXPAND_FIELDS[i]));
                 }
-                //buffer.append(row.stream().map(Parsing::escapeCSV).collect(Collectors.joining(String.valueOf(DELIM)))).append("\n");
-                appendRowToBuffer(buffer, row);
+                appendRow(buffer, prefix, cells);
+            }
+        }
+        logger.debugf("Converted the JSON to CSV: %s", buffer);
+        return buffer;
+    }
+
+    /**
+     * Streaming variant of generateCSVfromJSON producing the same rows.
+     * The payload is read token by token from the stream: only the cells of FIXED_PATHS and of the
+     * EXPAND_FIELDS of each transaction are kept, no String copy of the body nor JsonNode tree is built.
+     * The transaction cells are encoded as soon as a transaction is read; the rows are appended to the
+     * given buffer once the whole document has been read, as the transactions may come before the fixed fields.
+     * @return false when the stream does not hold any JSON document
+     * @throws JsonProcessingException when the body is not valid JSON, nothing being appended to the buffer
+     * @throws IOException when the stream could not be read, e.g. the connection was reset, which may be retried
+     */
+    public static boolean generateCSVfromStream(InputStream in, String isin, LocalDate date, StringBuilder buffer) throws IOException {
+        return generateCSV(jsonFactory.createParser(in), isin, date, buffer);
+    }
+
+    /**
+     * Same as generateCSVfromStream, the parser reading the UTF-8 bytes of the body without decoding them to chars first.
+     */
+    public static boolean generateCSVfromBytes(PayloadBuffer body, String isin, LocalDate date, StringBuilder buffer) throws JsonProcessingException {
+        try {
+            return generateCSV(jsonFactory.createParser(body.array(), 0, body.length()), isin, date, buffer);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Not expected when reading from an array
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean generateCSV(JsonParser jsonParser, String isin, LocalDate date, StringBuilder buffer) throws IOException {
+        String[] fixedCells = new String[FIXED_PATHS.length + 2];
+        Arrays.fill(fixedCells, "");
+        fixedCells[0] = isin;
+        fixedCells[1] = date.format(DATE_FORMATTER_OUT);
+
+        EncodedRows[] candidateRows = new EncodedRows[COMPILED_EXPAND_BASE_CANDIDATES.length];
+
+        try (JsonParser parser = jsonParser) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return false;
+            }
+            if (token == JsonToken.START_OBJECT) {
+                readObject(parser, PATH_TREE, fixedCells, candidateRows);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        StringBuilder prefix = new StringBuilder(1024);
+        appendCells(prefix, fixedCells);
+
+        EncodedRows txRows = null;
+        for (EncodedRows rows : candidateRows) {
+            if (rows != null && rows.count > 0) {
+                txRows = rows;
+                break;
+            }
+        }
+        if (txRows == null) {
+            String[] emptyCells = new String[EXPAND_FIELDS.length];
+            Arrays.fill(emptyCells, "");
+            appendRow(buffer, prefix, emptyCells);
+        } else {
+            int start = 0;
+            for (int i = 0; i < txRows.count; i++) {
+                appendRow(buffer, prefix, txRows.cells, start, txRows.ends[i]);
+                start = txRows.ends[i];
+            }
+        }
+        return true;
+    }
+
+    private static void readObject(JsonParser parser, PathNode node, String[] fixedCells, EncodedRows[] candidateRows) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            PathNode child = node.children.get(parser.currentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.candidateIndex >= 0 && token == JsonToken.START_ARRAY) {
+                candidateRows[child.candidateIndex] = readTransactions(parser);
+            } else if (child.fixedIndex >= 0) {
+                fixedCells[child.fixedIndex + 2] = formatJsonToken(parser, token);
+            } else if (token == JsonToken.START_OBJECT) {
+                readObject(parser, child, fixedCells, candidateRows);
             } else {
-                // --- OPTIMIZATION: Reuse the 'row' list to avoid object creation ---
-                List<String> row = new ArrayList<>(fixedCells.size() + EXPAND_FIELDS.length);
-                for (JsonNode txItem : txItems) {
-                    row.clear();
-                    row.addAll(fixedCells);
-                    for (String field : EXPAND_FIELDS) {
-                        row.add(formatJsonValue(txItem.get(field)));
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static EncodedRows readTransactions(JsonParser parser) throws IOException {
+        EncodedRows rows = new EncodedRows();
+        String[] cells = new String[EXPAND_FIELDS.length];
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            Arrays.fill(cells, "");
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Integer index = EXPAND_FIELD_INDEX.get(parser.currentName());
+                    JsonToken valueToken = parser.nextToken();
+                    if (index == null) {
+                        parser.skipChildren();
+                    } else {
+                        cells[index] = formatJsonToken(parser, valueToken);
                     }
-                    appendRowToBuffer(buffer, row);
                 }
+            } else {
+                parser.skipChildren();
             }
-        } catch (IOException e) {
-            logger.errorf("Error processing JSON for ISIN %s on %s: %s", item.isin(), item.date(), e.getMessage());
+            rows.add(cells);
+        }
+        return rows;
+    }
+
+    /**
+     * Same formatting as formatJsonValue, for the current token of the streaming parser.
+     */
+    private static String formatJsonToken(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return "";
+            case VALUE_NUMBER_INT:
+                return CellFormatter.formatIntegerToken(parser.getText());
+            case VALUE_NUMBER_FLOAT:
+                // The tree model keeps the floating point numbers as doubles
+                return CellFormatter.formatNumber(BigDecimal.valueOf(parser.getDoubleValue()));
+            case VALUE_STRING:
+                return CellFormatter.formatText(parser.getText());
+            case START_OBJECT:
+            case START_ARRAY:
+                StringWriter json = new StringWriter();
+                try (JsonGenerator generator = jsonFactory.createGenerator(json)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                return json.toString();
+            default:
+                return parser.getText();
         }
-        logger.debugf("Converted the JSON to CSV: %s", buffer.toString());
-        return buffer;
     }
 
     /**
-     * OPTIMIZATION: A dedicated, high-performance method to join strings for a CSV row.
-     * This avoids the overhead of using streams in a tight loop.
+     * Transaction cells already encoded (each one with its leading delimiter) in a single buffer,
+     * with the end offset of every row.
      */
-    private static void appendRowToBuffer(StringBuilder buffer, List<String> row) {
-        for (int i = 0; i < row.size(); i++) {
-            buffer.append(escapeCSV(row.get(i)));
-            if (i < row.size() - 1) {
-                buffer.append(DELIM);
+    private static final class EncodedRows {
+        final StringBuilder cells = new StringBuilder(4096);
+        int[] ends = new int[16];
+        int count;
+
+        void add(String[] rowCells) {
+            for (String cell : rowCells) {
+                cells.append(DELIM);
+                appendCell(cells, cell);
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = cells.length();
+        }
+    }
+
+    private static final class PathNode {
+        final Map<String, PathNode> children = new HashMap<>();
+        int fixedIndex = -1;
+        int candidateIndex = -1;
+
+        PathNode child(String path) {
+            PathNode node = this;
+            for (String name : path.substring(1).split("/")) {
+                node = node.children.computeIfAbsent(name, k -> new PathNode());
             }
+            return node;
+        }
+    }
+
+    private static PathNode compilePathTree() {
+        PathNode root = new PathNode();
+        for (int i = 0; i < COMPILED_FIXED_PATHS.length; i++) {
+            root.child(COMPILED_FIXED_PATHS[i]).fixedIndex = i;
         }
-        buffer.append("\n");
+        for (int i = 0; i < COMPILED_EXPAND_BASE_CANDIDATES.length; i++) {
+            root.child(COMPILED_EXPAND_BASE_CANDIDATES[i]).candidateIndex = i;
+        }
+        return root;
     }
 
     public static JsonNode selectFirstNonEmpty(JsonNode obj, String[] candidates) {
         for (String candidate : candidates) {
-            JsonNode node = obj.at("/" + candidate.replace("[*]", "").replace("['", "/").replace("']", ""));
+            // The candidates may already be compiled as JSON pointers (COMPILED_EXPAND_BASE_CANDIDATES)
+            String pointer = candidate.startsWith("/") ? candidate : "/" + candidate.replace("[*]", "").replace("['", "/").replace("']", "");
+            JsonNode node = obj.at(pointer);
             if (node != null && !node.isMissingNode() && node.isArray() && node.size() > 0) {
                 return node;
             }
@@ -117,19 +303,12 @@ public class Parsing {
 
         // Handle numbers with Belgian-French locale (comma decimal separator)
         if (node.isNumber()) {
-            return NUMBER_FORMATTER.format(node.decimalValue());
+            return CellFormatter.formatNumber(node.decimalValue());
         }
 
+        // A date-time string is reformatted as a date, any other text is trimmed
         if (node.isTextual()) {
-            String text = node.asText();
-            // Check if the text is a date-time string and reformat it
-            try {
-                LocalDate date = LocalDate.parse(text, DateTimeFormatter.ISO_DATE_TIME);
-                return date.format(DATE_FORMATTER_OUT);
-            } catch (DateTimeParseException e) {
-                // Not a date-time string, just trim and return it
-                return text.trim();
-            }
+            return CellFormatter.formatText(node.asText());
         }
 
         // Fallback for other types (boolean, etc.)
@@ -0,0 +1,142 @@
+package com.euroclear.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Body of a response kept as its UTF-8 bytes, from the network to the JSON parser of the consumers, instead of a
+ * String decoded to UTF-16 and parsed back from chars.
+ * The buffers read by the producers come from a pool: the consumer releases a buffer once its JSON is converted to
+ * CSV rows, and the next response is read into the same array. A buffer which is never released is simply
+ * collected; a buffer grown over MAX_POOLED_CAPACITY is not pooled again, so that a few large responses do not pin
+ * their arrays for the whole run. The pool holds at most MAX_POOLED_BYTES of arrays, whatever their sizes.
+ */
+public class PayloadBuffer {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+    private static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    private static final ConcurrentLinkedQueue<PayloadBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+    private static final AtomicLong pooledBytes = new AtomicLong();
+    private static final AtomicLong allocated = new AtomicLong();
+    private static final AtomicLong reused = new AtomicLong();
+
+    static {
+        Metrics.gauge("payload.pooled", pooled::get);
+        Metrics.gauge("payload.pooledBytes", pooledBytes::get);
+        Metrics.gauge("payload.allocated", allocated::get);
+        Metrics.gauge("payload.reused", reused::get);
+    }
+
+    private byte[] bytes;
+    private int length;
+    private final boolean poolable;
+    private boolean inPool;
+
+    private PayloadBuffer(byte[] bytes, int length, boolean poolable) {
+        this.bytes = bytes;
+        this.length = length;
+        this.poolable = poolable;
+    }
+
+    /**
+     * @return an empty buffer, from the pool when one is available
+     */
+    public static PayloadBuffer acquire() {
+        PayloadBuffer buffer = pool.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return new PayloadBuffer(new byte[INITIAL_CAPACITY], 0, true);
+        }
+        pooled.decrementAndGet();
+        pooledBytes.addAndGet(-buffer.bytes.length);
+        reused.incrementAndGet();
+        buffer.inPool = false;
+        buffer.length = 0;
+        return buffer;
+    }
+
+    /**
+     * Wraps bytes already read, e.g. the body of an async response, without copying them. Never pooled.
+     */
+    public static PayloadBuffer wrap(byte[] bytes) {
+        return new PayloadBuffer(bytes, bytes.length, false);
+    }
+
+    public static PayloadBuffer of(String text) {
+        return wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the whole stream to the buffer.
+     */
+    public PayloadBuffer readFrom(InputStream in) throws IOException {
+        int read;
+        do {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            read = in.read(bytes, length, bytes.length - length);
+            if (read > 0) {
+                length += read;
+            }
+        } while (read >= 0);
+        return this;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the size of the array, i.e. the bytes held on the heap whatever the length of the body
+     */
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * @return true when the body only holds whitespaces, as String.trim().isEmpty()
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if ((bytes[i] & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives the buffer back to the pool. It must not be used afterwards.
+     */
+    public void release() {
+        if (!poolable || inPool || bytes.length > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        if (pooledBytes.addAndGet(bytes.length) > MAX_POOLED_BYTES) {
+            pooledBytes.addAndGet(-bytes.length);
+            return;
+        }
+        pooled.incrementAndGet();
+        inPool = true;
+        length = 0;
+        pool.offer(this);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
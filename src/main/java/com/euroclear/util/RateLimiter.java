@@ -0,0 +1,93 @@
+package com.euroclear.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide token bucket shared by all the producers.
+ * The bucket is implemented as a GCRA (generic cell rate algorithm): a single atomic
+ * "theoretical arrival time" is advanced by one emission interval per permit, so that
+ * acquiring a permit is one CAS and the waiting is done outside of any lock.
+ * Thousands of virtual threads can therefore wait on the limiter without contention.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    /**
+     * @param permitsPerSecond sustained rate of requests
+     * @param burst number of requests that can be sent at once after an idle period
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive: " + permitsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst must be at least 1: " + burst);
+        }
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Blocks the calling thread until a permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit only if one is available right now.
+     * @return true if the permit was granted
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrivalTime.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - burstNanos - now > 0) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return how long a caller would wait for a permit now, 0 when one is available
+     */
+    public long waitNanos() {
+        long now = System.nanoTime();
+        return Math.max(0L, Math.max(theoreticalArrivalTime.get(), now) + intervalNanos - burstNanos - now);
+    }
+
+    /**
+     * @return number of permits which can be taken at once now, i.e. the quota remaining in the bucket
+     */
+    public double availablePermits() {
+        long now = System.nanoTime();
+        long backlog = Math.max(0L, theoreticalArrivalTime.get() - now);
+        return (double) (burstNanos - backlog) / intervalNanos;
+    }
+
+    /**
+     * Reserves the next permit and returns how long the caller must wait before using it.
+     */
+    long reserve() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = theoreticalArrivalTime.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (theoreticalArrivalTime.compareAndSet(current, next)) {
+                return Math.max(0L, next - burstNanos - now);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.euroclear.util;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Closing days of a settlement system, on top of the week-ends.
+ * <ul>
+ *     <li>{@link #target2()}: the TARGET2 closing days (New Year, Good Friday, Easter Monday, Labour Day, Christmas and the 26th of December)</li>
+ *     <li>{@link #fromFile(Path)}: the holidays of a market, one yyyy-MM-dd date per line, '#' starting a comment</li>
+ *     <li>{@link #of(String)}: the union of the calendars listed in the CALENDARS env variable</li>
+ * </ul>
+ */
+public interface SettlementCalendar {
+
+    String TARGET2 = "TARGET2";
+    String NONE = "NONE";
+
+    boolean isHoliday(LocalDate date);
+
+    default boolean isBusinessDay(LocalDate date) {
+        DayOfWeek day = date.getDayOfWeek();
+        return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY && !isHoliday(date);
+    }
+
+    static SettlementCalendar none() {
+        return date -> false;
+    }
+
+    static SettlementCalendar target2() {
+        return date -> {
+            int day = date.getDayOfMonth();
+            switch (date.getMonth()) {
+                case JANUARY:
+                    return day == 1;
+                case MAY:
+                    return day == 1;
+                case DECEMBER:
+                    return day == 25 || day == 26;
+                case MARCH:
+                case APRIL:
+                    LocalDate easter = easterSunday(date.getYear());
+                    return date.equals(easter.minusDays(2)) || date.equals(easter.plusDays(1));
+                default:
+                    return false;
+            }
+        };
+    }
+
+    static SettlementCalendar fromFile(Path path) {
+        Set<LocalDate> holidays = new HashSet<>();
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                int comment = line.indexOf('#');
+                String value = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!value.isEmpty()) {
+                    holidays.add(LocalDate.parse(value, DateTimeFormatter.ISO_LOCAL_DATE));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the calendar " + path, e);
+        }
+        Logger.getLogger(SettlementCalendar.class).infof("### Calendar %s: %d holidays", path, holidays.size());
+        return holidays::contains;
+    }
+
+    static SettlementCalendar union(List<SettlementCalendar> calendars) {
+        return date -> {
+            for (SettlementCalendar calendar : calendars) {
+                if (calendar.isHoliday(date)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Parses a comma separated list of calendars: TARGET2, NONE or the path of a calendar file.
+     */
+    static SettlementCalendar of(String spec) {
+        List<SettlementCalendar> calendars = new ArrayList<>();
+        for (String name : spec.split("\\s*,\\s*")) {
+            if (name.isEmpty() || NONE.equalsIgnoreCase(name)) {
+                continue;
+            }
+            calendars.add(TARGET2.equalsIgnoreCase(name) ? target2() : fromFile(Path.of(name)));
+        }
+        return calendars.isEmpty() ? none() : calendars.size() == 1 ? calendars.get(0) : union(calendars);
+    }
+
+    /**
+     * Easter Sunday of the Gregorian calendar (anonymous Gregorian algorithm).
+     */
+    static LocalDate easterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, Month.of(month), day);
+    }
+}
@@ -0,0 +1,76 @@
+package com.euroclear.util;
+
+import java.time.LocalDate;
+
+import static com.euroclear.util.ApiConfig.INSTANCE_ID;
+import static com.euroclear.util.ApiConfig.LEASE_DIR;
+import static com.euroclear.util.ApiConfig.SHARD_COUNT;
+import static com.euroclear.util.ApiConfig.SHARD_INDEX;
+
+/**
+ * Partition of a run across several client processes. Each (ISIN, date) pair hashes to one of SHARD_COUNT shards;
+ * the process SHARD_INDEX only fetches its pairs and writes to files suffixed with its shard, which are combined
+ * afterwards by {@link com.euroclear.ShardMerge}. SHARD_COUNT must stay the same across the runs of a backfill,
+ * so that a pair always belongs to the same shard and its journal.
+ * <p>
+ * The instances coordinated with leases (LEASE_DIR) share the work dynamically instead, but write to their own
+ * files the same way, suffixed with their INSTANCE_ID.
+ */
+public class Sharding {
+
+    public Sharding() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static boolean isSharded() {
+        return SHARD_COUNT > 1;
+    }
+
+    /**
+     * @return true when the pair belongs to the shard of this process
+     */
+    public static boolean includes(String isin, LocalDate date) {
+        return !isSharded() || shardOf(isin, date, SHARD_COUNT) == SHARD_INDEX;
+    }
+
+    /**
+     * Stable hash of the pair: String.hashCode is specified, so all the processes agree on the shard of a pair.
+     */
+    public static int shardOf(String isin, LocalDate date, int shardCount) {
+        long h = isin.hashCode() * 0x9E3779B97F4A7C15L + date.toEpochDay();
+        // Murmur3 finalizer, so that the consecutive dates of an ISIN spread over all the shards
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) shardCount);
+    }
+
+    /**
+     * Name of a file of this process: "2025-01.csv" becomes "2025-01-shard-2.csv" for the shard 2.
+     */
+    public static String fileName(String name) {
+        return withSuffix(name, suffix());
+    }
+
+    /**
+     * Name of a file of another instance coordinated with leases.
+     */
+    public static String fileName(String name, String instanceId) {
+        return withSuffix(name, "-shard-" + instanceId);
+    }
+
+    /**
+     * @return the suffix of the files of this process, empty when the run is neither sharded nor coordinated
+     */
+    public static String suffix() {
+        if (isSharded()) {
+            return "-shard-" + SHARD_INDEX;
+        }
+        return LEASE_DIR != null ? "-shard-" + INSTANCE_ID : "";
+    }
+
+    private static String withSuffix(String name, String suffix) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot);
+    }
+}
@@ -0,0 +1,133 @@
+package com.euroclear.util;
+
+import com.microsoft.aad.msal4j.IAuthenticationResult;
+import org.jboss.logging.Logger;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide holder of an access token.
+ * <ul>
+ *     <li>single-flight: concurrent callers needing a token wait on the same acquisition</li>
+ *     <li>proactive: a background refresh starts when the renewal time is reached, so that
+ *     request threads keep using the current token and never wait on Azure AD</li>
+ * </ul>
+ * Callers only block when there is no usable token at all (first call, or failed refreshes).
+ */
+public class TokenCache {
+    private static final Logger logger = Logger.getLogger(TokenCache.class);
+
+    // A token expiring within this delay is not handed out anymore
+    private static final long EXPIRY_SAFETY_MS = 5000L;
+    // Delay before retrying a failed background refresh
+    private static final long REFRESH_RETRY_MS = 10000L;
+
+    private final String name;
+    private final Supplier<CompletableFuture<IAuthenticationResult>> acquirer;
+    private final long renewalMarginMs;
+    private final AtomicReference<CompletableFuture<IAuthenticationResult>> refreshing = new AtomicReference<>();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private volatile Entry current;
+    private ScheduledFuture<?> nextRefresh;
+
+    private record Entry(IAuthenticationResult result, long refreshAtMillis) {}
+
+    /**
+     * @param name name of the cache used in the logs and metrics
+     * @param acquirer asynchronous acquisition of a new token
+     * @param renewalMarginMs a new token is acquired this long before the expiration of the current one
+     */
+    public TokenCache(String name, Supplier<CompletableFuture<IAuthenticationResult>> acquirer, long renewalMarginMs) {
+        this.name = name;
+        this.acquirer = acquirer;
+        this.renewalMarginMs = renewalMarginMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TokenRefresh-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.gauge("token." + name + ".acquisitions", acquisitions::get);
+    }
+
+    /**
+     * Returns a valid access token, acquiring one only if none is usable.
+     */
+    public String getAccessToken() {
+        Entry entry = current;
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.result().expiresOnDate().getTime() - EXPIRY_SAFETY_MS) {
+            if (now >= entry.refreshAtMillis()) {
+                // The scheduled refresh is late: start it without waiting for it
+                refresh();
+            }
+            return entry.result().accessToken();
+        }
+        logger.infof("### Thread - %s, No valid token found. Waiting for a new token...", Thread.currentThread().getName());
+        return refresh().join().accessToken();
+    }
+
+    /**
+     * Starts an acquisition, or joins the one already in flight.
+     */
+    public CompletableFuture<IAuthenticationResult> refresh() {
+        while (true) {
+            CompletableFuture<IAuthenticationResult> inFlight = refreshing.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            CompletableFuture<IAuthenticationResult> mine = new CompletableFuture<>();
+            if (refreshing.compareAndSet(null, mine)) {
+                acquire(mine);
+                return mine;
+            }
+        }
+    }
+
+    private void acquire(CompletableFuture<IAuthenticationResult> mine) {
+        acquisitions.incrementAndGet();
+        CompletableFuture<IAuthenticationResult> acquisition;
+        try {
+            acquisition = acquirer.get();
+        } catch (RuntimeException e) {
+            acquisition = CompletableFuture.failedFuture(e);
+        }
+        acquisition.whenComplete((result, error) -> {
+            if (error == null) {
+                long acquiredAt = System.currentTimeMillis();
+                long lifetime = result.expiresOnDate().getTime() - acquiredAt;
+                // Renew TOKEN_EXPIRATION_SECOND before the expiration, but never before half of the token lifetime
+                long refreshAt = result.expiresOnDate().getTime() - Math.min(renewalMarginMs, lifetime / 2);
+                current = new Entry(result, refreshAt);
+                scheduleRefresh(refreshAt - acquiredAt);
+                logger.infof("### Token %s acquired - expiring on: %s - renewal on: %s", name, result.expiresOnDate(), new Date(refreshAt));
+            } else {
+                logger.errorf("Error acquiring the token %s: %s", name, error.getMessage());
+                if (current != null) {
+                    scheduleRefresh(REFRESH_RETRY_MS);
+                }
+            }
+            refreshing.set(null);
+            if (error == null) {
+                mine.complete(result);
+            } else {
+                mine.completeExceptionally(error);
+            }
+        });
+    }
+
+    private synchronized void scheduleRefresh(long delayMs) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        nextRefresh = scheduler.schedule(this::refresh, Math.max(0L, delayMs), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,98 @@
+package com.euroclear;
+
+import com.euroclear.util.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("The limit should only grow while the requests in flight use it")
+    void testIncreaseWhenSaturated() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, 64);
+        // One request at a time: the limit of 8 is never reached
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.release(200, 1_000_000, null);
+        }
+        assertEquals(8.0, limiter.getLimit());
+
+        // Every permit in use, each response followed by the next request
+        int inFlight = 0;
+        for (int i = 0; i < 100; i++) {
+            while (inFlight < (int) limiter.getLimit()) {
+                limiter.acquire();
+                inFlight++;
+            }
+            limiter.release(200, 1_000_000, null);
+            inFlight--;
+        }
+        for (; inFlight > 0; inFlight--) {
+            limiter.release(200, 1_000_000, null);
+        }
+        assertTrue(limiter.getLimit() > 12, "limit: " + limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("A 429, a 503 or a failed request should cut the limit once per cool down, never below the minimum")
+    void testDecrease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 16, 64);
+        limiter.acquire();
+        limiter.release(429, 1_000_000, null);
+        assertEquals(8.0, limiter.getLimit());
+        // Same burst of errors
+        limiter.acquire();
+        limiter.release(503, 1_000_000, null);
+        assertEquals(8.0, limiter.getLimit());
+
+        Thread.sleep(1100);
+        limiter.acquire();
+        limiter.release(503, 1_000_000, null);
+        assertEquals(4.0, limiter.getLimit());
+        Thread.sleep(1100);
+        limiter.acquire();
+        limiter.release(-1, 0, null);
+        assertEquals(2.0, limiter.getLimit());
+        Thread.sleep(1100);
+        limiter.acquire();
+        limiter.release(429, 1_000_000, null);
+        assertEquals(2.0, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("A Retry-After should hold the new requests for the time asked by the server")
+    void testRetryAfter() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, 64);
+        limiter.acquire();
+        limiter.release(200, 1_000_000, "1");
+        long start = System.nanoTime();
+        limiter.acquire();
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        limiter.release();
+        assertTrue(waitedMillis >= 900 && waitedMillis < 2000, "waited: " + waitedMillis);
+        assertEquals(8.0, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("A p95 latency drifting above its baseline should cut the limit")
+    void testLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 16, 64);
+        for (int i = 0; i < 64; i++) {
+            limiter.acquire();
+            limiter.release(200, TimeUnit.MILLISECONDS.toNanos(1), null);
+        }
+        assertEquals(16.0, limiter.getLimit());
+        // The p95 of the 128 latencies goes from 1 to 10 ms
+        for (int i = 0; i < 64; i++) {
+            limiter.acquire();
+            limiter.release(200, TimeUnit.MILLISECONDS.toNanos(10), null);
+        }
+        assertEquals(8.0, limiter.getLimit());
+    }
+}
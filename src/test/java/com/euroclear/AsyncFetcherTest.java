@@ -0,0 +1,147 @@
+package com.euroclear;
+
+import com.euroclear.util.AdaptiveConcurrencyLimiter;
+import com.euroclear.util.ApiConfig;
+import com.euroclear.util.CircuitBreaker;
+import com.euroclear.util.Credential;
+import com.euroclear.util.CredentialPool;
+import com.euroclear.util.CsvFileWriter;
+import com.euroclear.util.HedgePolicy;
+import com.euroclear.util.RateLimiter;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class AsyncFetcherTest {
+
+    // Process-wide state of the client, restored after each test
+    private boolean isDryRun;
+    private String dryRunAddress;
+    private Boolean streamingConversion;
+    private CredentialPool credentials;
+    private HedgePolicy hedging;
+    private CircuitBreaker circuitBreaker;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private RetryScheduler retryScheduler;
+
+    @BeforeEach
+    void saveState() {
+        isDryRun = LiquidityDriveNewClient.isDryRun;
+        dryRunAddress = LiquidityDriveNewClient.dryRunAddress;
+        streamingConversion = ApiConfig.STREAMING_CONVERSION;
+        credentials = LiquidityDriveNewClient.credentials;
+        hedging = LiquidityDriveNewClient.hedging;
+        circuitBreaker = LiquidityDriveNewClient.circuitBreaker;
+        concurrencyLimiter = LiquidityDriveNewClient.concurrencyLimiter;
+        retryScheduler = LiquidityDriveNewClient.retryScheduler;
+    }
+
+    @AfterEach
+    void restoreState() {
+        LiquidityDriveNewClient.isDryRun = isDryRun;
+        LiquidityDriveNewClient.dryRunAddress = dryRunAddress;
+        ApiConfig.STREAMING_CONVERSION = streamingConversion;
+        LiquidityDriveNewClient.credentials = credentials;
+        LiquidityDriveNewClient.hedging = hedging;
+        LiquidityDriveNewClient.circuitBreaker = circuitBreaker;
+        LiquidityDriveNewClient.concurrencyLimiter = concurrencyLimiter;
+        LiquidityDriveNewClient.retryScheduler = retryScheduler;
+    }
+
+    @Test
+    @DisplayName("A pair whose response fails to be handled should be retried, not dropped")
+    void testHandlerError(@TempDir Path dir) throws Exception {
+        byte[] body;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("samples/AT0000A326N4/isin.json")) {
+            assertNotNull(is);
+            body = is.readAllBytes();
+        }
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/liquidity", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        // The first response cannot be queued
+        AtomicInteger puts = new AtomicInteger();
+        BlockingQueue<QueueItem> queue = new LinkedBlockingQueue<>() {
+            @Override
+            public void put(QueueItem item) throws InterruptedException {
+                if (puts.getAndIncrement() == 0) {
+                    throw new IllegalStateException("queue closed");
+                }
+                super.put(item);
+            }
+        };
+
+        Credential credential = new Credential("async-test", null, null, null, null, new RateLimiter(100, 10));
+        CredentialPool pool = new CredentialPool(List.of(credential));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, 8);
+        LiquidityDriveNewClient.isDryRun = true;
+        LiquidityDriveNewClient.dryRunAddress = "http://localhost:" + server.getAddress().getPort();
+        ApiConfig.STREAMING_CONVERSION = false;
+        LiquidityDriveNewClient.credentials = pool;
+        LiquidityDriveNewClient.hedging = null;
+        LiquidityDriveNewClient.circuitBreaker = null;
+        LiquidityDriveNewClient.concurrencyLimiter = limiter;
+
+        Path deadLetters = dir.resolve("dead-letter.csv");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             CsvFileWriter deadLetterWriter = new CsvFileWriter(deadLetters);
+             CsvFileWriter errorWriter = new CsvFileWriter(dir.resolve("errors.csv"));
+             RetryScheduler scheduler = new RetryScheduler(executor, deadLetterWriter, 3, 10, 50)) {
+            LiquidityDriveNewClient.retryScheduler = scheduler;
+            AsyncFetcher fetcher = new AsyncFetcher(pool, queue, errorWriter, executor, limiter, null);
+            scheduler.start(workItem -> {
+                try {
+                    fetcher.fetch(workItem);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            fetcher.fetch(new WorkItem("AT0000A326N4", LocalDate.of(2025, 1, 2)));
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                do {
+                    scheduler.awaitIdle();
+                    limiter.awaitIdle();
+                } while (scheduler.getPending() > 0);
+            });
+        } finally {
+            pool.close();
+            server.stop(0);
+        }
+
+        assertEquals(2, requests.get());
+        assertEquals(1, queue.size());
+        assertEquals("AT0000A326N4", queue.peek().isin());
+        assertEquals(0, Files.size(deadLetters));
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,70 @@
+package com.euroclear;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.euroclear.AvailabilityProber.Availability.AVAILABLE;
+import static com.euroclear.AvailabilityProber.Availability.EMPTY;
+import static com.euroclear.AvailabilityProber.Availability.UNAVAILABLE;
+import static com.euroclear.AvailabilityProber.Availability.UNKNOWN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AvailabilityProberTest {
+
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    private static List<WorkItem> workItems(int days) {
+        return IntStream.range(0, days).mapToObj(i -> new WorkItem("BE0000001", START.plusDays(i))).toList();
+    }
+
+    @Test
+    @DisplayName("The window of an ISIN should be found with a few probes")
+    void testTrim() {
+        List<WorkItem> workItems = workItems(1000);
+        int[][] windows = {{0, 999}, {0, 409}, {123, 999}, {321, 654}, {500, 530}, {999, 999}};
+        for (int[] window : windows) {
+            AtomicInteger probes = new AtomicInteger();
+            AvailabilityProber prober = new AvailabilityProber(workItem -> {
+                probes.incrementAndGet();
+                int i = workItems.indexOf(workItem);
+                return i >= window[0] && i <= window[1] ? AVAILABLE : UNAVAILABLE;
+            }, 20);
+            assertEquals(workItems.subList(window[0], window[1] + 1), prober.trim(workItems), window[0] + "-" + window[1]);
+            assertTrue(probes.get() < 100, "probes: " + probes.get());
+        }
+    }
+
+    @Test
+    @DisplayName("An ISIN never available should be skipped, an unknown availability should keep the whole range")
+    void testUnavailable() {
+        List<WorkItem> workItems = workItems(200);
+        assertEquals(List.of(), new AvailabilityProber(workItem -> UNAVAILABLE, 20).trim(workItems));
+        assertEquals(workItems, new AvailabilityProber(workItem -> UNKNOWN, 20).trim(workItems));
+        assertEquals(workItems.subList(0, 30), new AvailabilityProber(workItem -> UNAVAILABLE, 20).trim(workItems.subList(0, 30)));
+    }
+
+    @Test
+    @DisplayName("The days without data inside the window should not be taken for its bounds")
+    void testHoles() {
+        List<WorkItem> workItems = workItems(1000);
+        // Issued on 200, redeemed after 800, no data on most days, among which the probed ones
+        AvailabilityProber prober = new AvailabilityProber(workItem -> {
+            int i = workItems.indexOf(workItem);
+            if (i < 200 || i > 800) {
+                return UNAVAILABLE;
+            }
+            return i == 200 || i == 800 || i % 97 == 0 ? AVAILABLE : EMPTY;
+        }, 20);
+        assertEquals(workItems.subList(200, 801), prober.trim(workItems));
+
+        // An ISIN with no data at all on its window is still kept on it
+        assertEquals(workItems.subList(300, 1000), new AvailabilityProber(
+            workItem -> workItems.indexOf(workItem) < 300 ? UNAVAILABLE : EMPTY, 20).trim(workItems));
+    }
+}
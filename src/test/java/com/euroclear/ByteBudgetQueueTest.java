@@ -0,0 +1,66 @@
+package com.euroclear;
+
+import com.euroclear.util.ByteBudgetQueue;
+import com.euroclear.util.PayloadBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ByteBudgetQueueTest {
+
+    @Test
+    @DisplayName("A producer should wait while the payloads exceed the budget, and an oversized one pass once the queue is empty")
+    void testBudget() throws Exception {
+        ByteBudgetQueue<String> queue = new ByteBudgetQueue<>(10, String::length);
+        queue.put("123456");
+        assertFalse(queue.offer("12345"));
+        assertTrue(queue.offer("1234"));
+        assertEquals(10, queue.bytes());
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                queue.put("123456789012");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+
+        assertEquals("123456", queue.take());
+        Thread.sleep(200);
+        // Still does not fit with the 4 bytes left
+        assertFalse(blocked.isDone());
+
+        List<String> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        blocked.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("1234"), drained);
+        assertEquals(12, queue.bytes());
+        assertEquals("123456789012", queue.poll());
+        assertEquals(0, queue.bytes());
+    }
+
+    @Test
+    @DisplayName("A queued payload should weigh the array of its buffer, not only its body")
+    void testPayloadBytes() throws Exception {
+        PayloadBuffer body = PayloadBuffer.acquire().readFrom(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+        QueueItem item = new QueueItem(body, "BE0000001", LocalDate.of(2025, 1, 2));
+        assertEquals(body.capacity(), item.payloadBytes());
+        assertTrue(item.payloadBytes() > body.length());
+
+        StringBuilder rows = new StringBuilder(8192).append("\"BE0000001\"\n");
+        assertEquals(8192, new QueueItem(null, "BE0000001", LocalDate.of(2025, 1, 2), rows).payloadBytes());
+    }
+}
@@ -0,0 +1,70 @@
+package com.euroclear;
+
+import com.euroclear.util.CellFormatter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * CellFormatter must produce the same cells as the DecimalFormat and ISO date-time parsing it replaces.
+ */
+public class CellFormatterTest {
+
+    private static final DecimalFormat NUMBER_FORMATTER = new DecimalFormat("0.############", new DecimalFormatSymbols(Locale.forLanguageTag("fr-BE")));
+
+    @Test
+    @DisplayName("Numbers should be formatted like DecimalFormat fr-BE")
+    void testFormatNumber() {
+        List<String> samples = List.of("0", "-0", "0.0", "1", "-1", "4.4E7", "0.9385394071", "3.125", "1E+30", "-1.5",
+            "0.0000000000005", "0.0000000000015", "-0.0000000000001", "123456789012345678901234567890.123456789012345",
+            "100.00", "1.0E-5", "12345678.25");
+        for (String sample : samples) {
+            BigDecimal value = new BigDecimal(sample);
+            assertEquals(NUMBER_FORMATTER.format(value), CellFormatter.formatNumber(value), sample);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            BigDecimal value = BigDecimal.valueOf((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 15));
+            assertEquals(NUMBER_FORMATTER.format(value), CellFormatter.formatNumber(value), value.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Integer tokens should be formatted like DecimalFormat fr-BE")
+    void testFormatIntegerToken() {
+        for (String token : List.of("0", "-0", "42", "-42", "123456789012345678901234567890")) {
+            assertEquals(NUMBER_FORMATTER.format(new BigDecimal(token)), CellFormatter.formatIntegerToken(token), token);
+        }
+    }
+
+    @Test
+    @DisplayName("Texts should be reduced to a date only when they are ISO date-times")
+    void testFormatText() {
+        List<String> samples = List.of("2025-01-02T00:00:00", "2025-01-02T00:00", "2025-01-02t10:15:30+01:00",
+            "2025-01-02T10:15:30Z[Europe/Brussels]", "2025-02-30T00:00:00", "2025-01-02", "2025-01-02T", " 2025-01-02T00:00:00",
+            "+2025-01-02T00:00:00", "AT0000A326N4", " ANNUA ", "", "2025-01-02T25:00:00", "2025-01-02T00:00:00 ");
+        for (String sample : samples) {
+            assertEquals(formatText(sample), CellFormatter.formatText(sample), sample);
+        }
+    }
+
+    private static String formatText(String text) {
+        try {
+            return LocalDate.parse(text, DateTimeFormatter.ISO_DATE_TIME).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        } catch (DateTimeParseException e) {
+            return text.trim();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.euroclear;
+
+import com.euroclear.util.ChannelWriter;
+import com.euroclear.util.CsvFileWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChannelWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("The characters should be encoded as UTF-8, across several fillings of the buffer")
+    void testEncoding() throws Exception {
+        Path path = tempDir.resolve("out.csv");
+        StringBuilder expected = new StringBuilder();
+        ChannelWriter.Policy policy = new ChannelWriter.Policy(ChannelWriter.Durability.FORCE, 64, 1000);
+        try (ChannelWriter writer = new ChannelWriter(path, policy, 16)) {
+            for (int i = 0; i < 100; i++) {
+                String row = "\"FR000012345" + i + "\",\"Société Générale\",\"€ 1,5\",\"📈\"\n";
+                writer.append(new StringBuilder(row));
+                expected.append(row);
+            }
+            writer.flush();
+        }
+        assertEquals(expected.toString(), Files.readString(path, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("A flush should write the rows to the file, a writer never written should leave it empty")
+    void testDurability() throws Exception {
+        Path batch = tempDir.resolve("batch.csv");
+        Path empty = tempDir.resolve("empty.csv");
+        try (CsvFileWriter batchWriter = new CsvFileWriter(batch, new ChannelWriter.Policy(ChannelWriter.Durability.BATCH, 0, 0));
+             CsvFileWriter emptyWriter = new CsvFileWriter(empty, new ChannelWriter.Policy(ChannelWriter.Durability.FORCE, 0, 0))) {
+            batchWriter.writeLine("row");
+            batchWriter.flush();
+            emptyWriter.flush();
+            assertEquals("row" + System.lineSeparator(), Files.readString(batch));
+        }
+        assertEquals("", Files.readString(empty));
+    }
+}
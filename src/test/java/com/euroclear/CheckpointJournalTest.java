@@ -0,0 +1,54 @@
+package com.euroclear;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CheckpointJournalTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+    private static final LocalDate END = LocalDate.of(2025, 1, 31);
+
+    @Test
+    @DisplayName("A restarted run should only fetch the pairs not journaled")
+    void testResume(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("checkpoint.journal");
+        List<WorkItem> workItems = List.of(
+            new WorkItem("BE0000001", LocalDate.of(2025, 1, 2)),
+            new WorkItem("BE0000001", LocalDate.of(2025, 1, 3)),
+            new WorkItem("BE0000002", LocalDate.of(2025, 1, 2)));
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, START, END)) {
+            assertEquals(workItems, pending(journal, workItems));
+            journal.markCompleted(List.of(new QueueItem(null, "BE0000001", LocalDate.of(2025, 1, 3), "")));
+            assertTrue(journal.isCompleted("BE0000001", LocalDate.of(2025, 1, 3)));
+        }
+        // Line cut by a crash
+        Files.writeString(path, "BE0000002,2025-01", StandardOpenOption.APPEND);
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, START, END)) {
+            assertEquals(List.of(workItems.get(0), workItems.get(2)), pending(journal, workItems));
+            assertFalse(journal.isCompleted("BE0000001", LocalDate.of(2025, 2, 3)));
+            journal.markCompleted(List.of(new QueueItem(null, "BE0000002", LocalDate.of(2025, 1, 2), "")));
+        }
+
+        try (CheckpointJournal journal = new CheckpointJournal(path, START, END)) {
+            assertEquals(List.of(workItems.get(0)), pending(journal, workItems));
+        }
+    }
+
+    private static List<WorkItem> pending(CheckpointJournal journal, List<WorkItem> workItems) {
+        return workItems.stream().filter(workItem -> !journal.isCompleted(workItem.isin(), workItem.date())).toList();
+    }
+}
@@ -0,0 +1,101 @@
+package com.euroclear;
+
+import com.euroclear.util.CircuitBreaker;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("The circuit should open on failures, park the requests, and close after successful trials")
+    void testOpenAndClose() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(10, 50, 30000, 1);
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.acquire(), 200, 0);
+        }
+        // 429 are not failures of the server
+        breaker.record(breaker.acquire(), 429, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.acquire(), 503, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        long start = System.nanoTime();
+        CompletableFuture<CircuitBreaker.Permit> parked = CompletableFuture.supplyAsync(() -> {
+            try {
+                return breaker.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(parked.isDone());
+        CircuitBreaker.Permit trial = parked.get(5, TimeUnit.SECONDS);
+        assertTrue(trial.trial());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.record(trial, 200, 0);
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.acquire(), 200, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("The circuit should open on slow requests, and again on a failed trial")
+    void testSlowRequests() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(10, 50, 100, 1);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.acquire(), 200, TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        CircuitBreaker.Permit trial = breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(trial, -1, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("The requests sent before the opening should not be taken for trial requests")
+    void testStragglers() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(10, 50, 30000, 1);
+        List<CircuitBreaker.Permit> stragglers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            stragglers.add(breaker.acquire());
+        }
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.acquire(), 503, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        CircuitBreaker.Permit trial = breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Successes and failures of the requests sent while closed change nothing
+        for (CircuitBreaker.Permit straggler : stragglers.subList(0, 5)) {
+            breaker.record(straggler, 200, 0);
+        }
+        breaker.record(stragglers.get(5), 503, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // A trial which could not be sent leaves its slot to another request
+        breaker.cancel(trial);
+        for (int i = 0; i < 5; i++) {
+            CircuitBreaker.Permit permit = breaker.acquire();
+            assertTrue(permit.trial());
+            breaker.record(permit, 200, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
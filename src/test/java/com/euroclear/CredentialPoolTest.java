@@ -0,0 +1,61 @@
+package com.euroclear;
+
+import com.euroclear.util.ApiConfig;
+import com.euroclear.util.Credential;
+import com.euroclear.util.CredentialPool;
+import com.euroclear.util.RateLimiter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CredentialPoolTest {
+
+    @BeforeAll
+    static void setUp() {
+        ApiConfig.TOKEN_EXPIRATION_SECOND = 600000L;
+    }
+
+    @Test
+    @DisplayName("The requests should go to the credential with the most quota remaining")
+    void testSpread() throws InterruptedException {
+        Credential a = newCredential("a");
+        Credential b = newCredential("b");
+        CredentialPool pool = new CredentialPool(List.of(a, b));
+
+        Credential first = pool.acquire();
+        Credential second = pool.acquire();
+        assertNotSame(first, second);
+    }
+
+    @Test
+    @DisplayName("A throttled credential should be paused without stalling the others")
+    void testThrottled() throws InterruptedException {
+        Credential a = newCredential("throttled-a");
+        Credential b = newCredential("throttled-b");
+        CredentialPool pool = new CredentialPool(List.of(a, b));
+
+        assertTrue(pool.absorbs(a, 429, "60"));
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertSame(b, pool.acquire());
+        }
+        // 5 permits of b at 10 requests/s, a being paused for a minute
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+
+        assertFalse(pool.absorbs(b, 200, null));
+        assertFalse(new CredentialPool(List.of(b)).absorbs(b, 429, null));
+        assertEquals(2, pool.size());
+    }
+
+    private static Credential newCredential(String name) {
+        return new Credential(name, "client-" + name, "key-" + name, null, null, new RateLimiter(10, 1));
+    }
+}
@@ -0,0 +1,62 @@
+package com.euroclear;
+
+import com.euroclear.util.HedgePolicy;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgePolicyTest {
+
+    @Test
+    @DisplayName("The hedge delay should be the percentile of the latest latencies, once enough are known")
+    void testPercentileWindow() {
+        HedgePolicy policy = new HedgePolicy(95, 25);
+        for (int i = 1; i < 32; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(Long.MAX_VALUE, policy.delayNanos());
+        policy.record(TimeUnit.MILLISECONDS.toNanos(32));
+        // 31st of 32 sorted latencies
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(31), policy.delayNanos());
+
+        // Only the latest 256 latencies count
+        for (int i = 0; i < 256; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(i < 240 ? 5 : 500));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), policy.delayNanos());
+        for (int i = 0; i < 256; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), policy.delayNanos());
+    }
+
+    @Test
+    @DisplayName("Each request should earn its share of a hedge, up to the cap, and a refunded hedge should be given back")
+    void testBudget() {
+        HedgePolicy policy = new HedgePolicy(95, 25);
+        assertFalse(policy.tryHedge());
+        for (int i = 0; i < 4; i++) {
+            policy.record(1_000_000);
+        }
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+
+        // A calm period only saves 10 hedges
+        for (int i = 0; i < 1000; i++) {
+            policy.record(1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.tryHedge(), "hedge " + i);
+        }
+        assertFalse(policy.tryHedge());
+
+        policy.refund();
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+}
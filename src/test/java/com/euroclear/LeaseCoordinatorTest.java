@@ -0,0 +1,126 @@
+package com.euroclear;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LeaseCoordinatorTest {
+
+    private static final String[] ISINS = {"BE0000001", "BE0000002"};
+
+    @Test
+    @DisplayName("Two instances should fetch each pair once and mark all the chunks done")
+    void testSplit(@TempDir Path dir) throws Exception {
+        Workload workload = newWorkload();
+        List<WorkItem> fetchedByA = new ArrayList<>();
+        List<WorkItem> fetchedByB = new ArrayList<>();
+        try (LeaseCoordinator a = new LeaseCoordinator(workload, dir, "a", 60, owner -> { });
+             LeaseCoordinator b = new LeaseCoordinator(workload, dir, "b", 60, owner -> { })) {
+            CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> fetchAll(a, fetchedByA)),
+                CompletableFuture.runAsync(() -> fetchAll(b, fetchedByB))).join();
+        }
+
+        Set<WorkItem> fetched = new HashSet<>(fetchedByA);
+        fetched.addAll(fetchedByB);
+        assertEquals(workload.size(), fetchedByA.size() + fetchedByB.size());
+        assertEquals(workload.size(), fetched.size());
+        assertEquals(4, count(dir.resolve("done")));
+        assertEquals(0, count(dir.resolve("leases")));
+    }
+
+    @Test
+    @DisplayName("An expired lease should be reclaimed")
+    void testReclaim(@TempDir Path dir) throws Exception {
+        Workload workload = newWorkload();
+        // Second generation of the lease, the first one having been reclaimed and deleted already
+        Path lease = Files.createDirectories(dir.resolve("leases")).resolve("BE0000001_2025-02.lease.2");
+        Files.writeString(lease, "dead");
+        Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+        List<String> reclaimedFrom = new ArrayList<>();
+        List<WorkItem> fetched = new ArrayList<>();
+        try (LeaseCoordinator coordinator = new LeaseCoordinator(workload, dir, "a", 60, reclaimedFrom::add)) {
+            fetchAll(coordinator, fetched);
+        }
+
+        assertEquals(List.of("dead"), reclaimedFrom);
+        assertEquals(workload.size(), fetched.size());
+        assertTrue(Files.exists(dir.resolve("done").resolve("BE0000001_2025-02")));
+        assertEquals(0, count(dir.resolve("leases")));
+    }
+
+    @Test
+    @DisplayName("The heartbeat should keep a live lease, and give up a chunk once its lease is superseded")
+    void testSuperseded(@TempDir Path dir) throws Exception {
+        Workload workload = newWorkload();
+        try (LeaseCoordinator coordinator = new LeaseCoordinator(workload, dir, "a", 3, owner -> { })) {
+            Workload.Cursor cursor = coordinator.cursor();
+            WorkItem first = cursor.next();
+            coordinator.settled(first.isin(), first.date());
+            String chunk = first.isin() + "_" + YearMonth.from(first.date());
+            Path lease = dir.resolve("leases").resolve(chunk + ".lease.1");
+
+            // Renewed by the heartbeat, never moved away
+            Thread.sleep(1500);
+            assertTrue(Files.exists(lease));
+            assertEquals("a", Files.readString(lease));
+
+            // Reclaimed by another instance after a pause of this one
+            Path next = dir.resolve("leases").resolve(chunk + ".lease.2");
+            Files.writeString(next, "b");
+            Thread.sleep(1500);
+
+            WorkItem workItem;
+            while ((workItem = cursor.next()) != null) {
+                assertFalse(chunk.equals(workItem.isin() + "_" + YearMonth.from(workItem.date())), workItem.toString());
+                coordinator.settled(workItem.isin(), workItem.date());
+            }
+            assertEquals("b", Files.readString(next));
+        }
+    }
+
+    private static Workload newWorkload() {
+        List<LocalDate> dates = Stream.iterate(LocalDate.of(2025, 1, 1), date -> date.plusDays(1))
+            .limit(59)
+            .filter(date -> date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY)
+            .toList();
+        return new Workload(ISINS, dates, Workload.Priority.NEWEST_FIRST);
+    }
+
+    /**
+     * Pulls the work items, each one being settled right away as if its rows were written.
+     */
+    private static void fetchAll(LeaseCoordinator coordinator, List<WorkItem> fetched) {
+        Workload.Cursor cursor = coordinator.cursor();
+        WorkItem workItem;
+        while ((workItem = cursor.next()) != null) {
+            fetched.add(workItem);
+            coordinator.settled(workItem.isin(), workItem.date());
+        }
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
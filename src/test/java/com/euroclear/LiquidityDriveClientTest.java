@@ -1,8 +1,11 @@
 package com.euroclear;
 
+import com.euroclear.util.PayloadBuffer;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -11,7 +14,9 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
+import static com.euroclear.util.Parsing.generateCSVfromBytes;
 import static com.euroclear.util.Parsing.generateCSVfromJSON;
+import static com.euroclear.util.Parsing.generateCSVfromStream;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -37,4 +42,73 @@ public class LiquidityDriveClientTest {
         assertNotNull(sb.toString());
         assertEquals(sb.toString(),csvExpected);
     }
+
+    @Test
+    @DisplayName("Streaming JSON to CSV should produce the same rows")
+    void testJsonStreamToCSVFormatting() throws IOException {
+        // CSV result
+        InputStream is = getClass().getClassLoader().getResourceAsStream("samples/AT0000A326N4/csv.txt");
+        assertNotNull(is);
+        String csvExpected = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+
+        // Stream the JSON File
+        is = getClass().getClassLoader().getResourceAsStream("samples/AT0000A326N4/isin.json");
+        assertNotNull(is);
+        StringBuilder sb = new StringBuilder();
+        assertTrue(generateCSVfromStream(is, "AT0000A326N4", LocalDate.parse("2025-01-02",DateTimeFormatter.ofPattern("yyyy-MM-dd")), sb));
+        assertEquals(csvExpected, sb.toString());
+    }
+
+    @Test
+    @DisplayName("Streaming JSON to CSV should expand the transactions like the tree model")
+    void testJsonStreamToCSVTransactions() throws IOException {
+        String json = "{\"transactions\":["
+            + "{\"transactionId\":\"a\\\"b\",\"transactionDate\":\"2025-01-02T00:00:00Z\",\"quantity\":1500,\"cashAmount\":12345.678,\"other\":{\"x\":[1,2]}},"
+            + "{\"quantity\":null,\"grossSettlementPrice\":1.0E-5,\"receivingPartyType\":{\"code\":\"CP\"},\"transactionStatus\":true}"
+            + "],"
+            + "\"referenceDate\":\"2025-01-02T00:00:00\",\"holdingScore\":0.9385394071,\"isin\":\" AT0000A326N4 \","
+            + "\"aggregatedHoldingData\":{\"freeFloatHolding\":4.4E7,\"simpleMovingAverage\":{\"60\":{\"concentration\":4.0}}},"
+            + "\"aggregatedTransactionData\":{\"totalVolCurrentBD\":{\"volumeEur\":123456789012345678901234567890},\"transactionCount\":2}}";
+        LocalDate date = LocalDate.parse("2025-01-02");
+
+        String expected = generateCSVfromJSON(new QueueItem(json, "AT0000A326N4", date)).toString();
+        StringBuilder sb = new StringBuilder();
+        assertTrue(generateCSVfromStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "AT0000A326N4", date, sb));
+        assertEquals(expected, sb.toString());
+        assertEquals(2, sb.toString().split("\n").length);
+
+        // Same rows from the bytes of a pooled buffer
+        PayloadBuffer body = PayloadBuffer.acquire().readFrom(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        StringBuilder fromBytes = new StringBuilder();
+        assertTrue(generateCSVfromBytes(body, "AT0000A326N4", date, fromBytes));
+        assertEquals(expected, fromBytes.toString());
+    }
+
+    @Test
+    @DisplayName("Invalid JSON and read errors should be thrown without rows")
+    void testJsonStreamErrors() {
+        LocalDate date = LocalDate.parse("2025-01-02");
+        StringBuilder sb = new StringBuilder();
+        byte[] truncated = "{\"isin\":\"AT0000A326N4\",\"transactions\":[{\"quantity\":1".getBytes(StandardCharsets.UTF_8);
+        assertThrows(JsonProcessingException.class, () -> generateCSVfromBytes(PayloadBuffer.wrap(truncated), "AT0000A326N4", date, sb));
+        assertThrows(JsonProcessingException.class, () -> generateCSVfromStream(new ByteArrayInputStream(truncated), "AT0000A326N4", date, sb));
+        assertThrows(JsonProcessingException.class, () -> generateCSVfromJSON(new QueueItem(PayloadBuffer.wrap(truncated), "AT0000A326N4", date)));
+        assertEquals(0, sb.length());
+
+        // A connection reset while streaming is not a JSON error, the pair is retried
+        InputStream reset = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read < truncated.length) {
+                    return truncated[read++];
+                }
+                throw new IOException("Connection reset");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> generateCSVfromStream(reset, "AT0000A326N4", date, sb));
+        assertFalse(e instanceof JsonProcessingException);
+        assertEquals(0, sb.length());
+    }
 }
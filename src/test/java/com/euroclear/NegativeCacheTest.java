@@ -0,0 +1,45 @@
+package com.euroclear;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NegativeCacheTest {
+
+    @Test
+    @DisplayName("The 204 and 404 pairs should be skipped until their expiry")
+    void testNegativeCache(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("negative-cache.csv");
+        LocalDate today = LocalDate.now();
+        Files.writeString(path, "BE0000003,2025-01-02,204," + today.minusDays(1) + "\n");
+
+        try (NegativeCache cache = new NegativeCache(path, 7)) {
+            assertFalse(cache.contains("BE0000003", LocalDate.of(2025, 1, 2)));
+            cache.record("BE0000001", LocalDate.of(2025, 1, 2), 404);
+            cache.record("BE0000002", today.minusDays(1), 204);
+            cache.record("BE0000002", today.minusDays(30), 204);
+            cache.record("BE0000002", today.minusDays(2), 500);
+        }
+
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(List.of("BE0000001,2025-01-02,404,", "BE0000002," + today.minusDays(1) + ",204," + today.plusDays(7),
+            "BE0000002," + today.minusDays(30) + ",204,"), lines);
+
+        try (NegativeCache cache = new NegativeCache(path, 7)) {
+            assertEquals(3, cache.size());
+            assertTrue(cache.contains("BE0000002", today.minusDays(30)));
+            assertTrue(cache.contains("BE0000001", LocalDate.of(2025, 1, 2)));
+            assertFalse(cache.contains("BE0000002", today.minusDays(2)));
+        }
+    }
+}
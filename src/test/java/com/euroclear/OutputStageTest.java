@@ -0,0 +1,43 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutputStageTest {
+
+    @Test
+    @DisplayName("Only the months with rows should start a writer thread, the rows being journaled once committed")
+    void testLazyWriters(@TempDir Path dir) throws Exception {
+        LocalDate date = LocalDate.of(2025, 1, 2);
+        QueueItem item = new QueueItem(null, "BE0000001", date, "\"BE0000001\"\n");
+        try (CheckpointJournal journal = new CheckpointJournal(dir.resolve("checkpoint.journal"), date, date.plusMonths(1))) {
+            OutputStage output = new OutputStage(Map.of(
+                "2025-01", new CsvFileWriter(dir.resolve("2025-01.csv")),
+                "2025-02", new CsvFileWriter(dir.resolve("2025-02.csv"))), journal, 1, 10, 1024);
+            assertFalse(output.submit("2024-12", item.csv(), List.of(item)));
+            assertTrue(output.submit("2025-01", item.csv(), List.of(item)));
+            assertTrue(writerThread("2025-01"));
+            assertFalse(writerThread("2025-02"));
+            output.close();
+            assertTrue(journal.isCompleted("BE0000001", date));
+        }
+        assertEquals("\"BE0000001\"\n", Files.readString(dir.resolve("2025-01.csv")));
+        assertEquals("", Files.readString(dir.resolve("2025-02.csv")));
+    }
+
+    private static boolean writerThread(String month) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("MonthWriter-" + month));
+    }
+}
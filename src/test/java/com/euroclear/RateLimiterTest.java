@@ -0,0 +1,73 @@
+package com.euroclear;
+
+import com.euroclear.util.RateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimiterTest {
+
+    @Test
+    @DisplayName("The burst should be granted at once, and the next permit only after an interval")
+    void testBurst() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(), "permit " + i);
+        }
+        assertFalse(limiter.tryAcquire());
+        Thread.sleep(120);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("Once the burst is spent, the permits should be granted at the sustained rate")
+    void testSteadyRate() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(200, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 101; i++) {
+            limiter.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 100 intervals of 5 ms after the first permit
+        assertTrue(elapsedMillis >= 480 && elapsedMillis < 2000, "elapsed: " + elapsedMillis);
+    }
+
+    @Test
+    @DisplayName("Concurrent callers should never be granted more than the bucket holds")
+    void testConcurrentTryAcquire() throws InterruptedException {
+        // One permit every 10 s: none is added while the test runs
+        RateLimiter limiter = new RateLimiter(0.1, 50);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (limiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(50, granted.get());
+    }
+}
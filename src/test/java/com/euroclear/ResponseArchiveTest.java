@@ -0,0 +1,94 @@
+package com.euroclear;
+
+import com.euroclear.util.ApiConfig;
+import com.euroclear.util.PayloadBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Integer shardCount;
+
+    @BeforeEach
+    void saveShardCount() {
+        shardCount = ApiConfig.SHARD_COUNT;
+        ApiConfig.SHARD_COUNT = 1;
+    }
+
+    @AfterEach
+    void restoreShardCount() {
+        ApiConfig.SHARD_COUNT = shardCount;
+    }
+
+    @Test
+    @DisplayName("The archived responses should be found by the index and the scan, the last one of a pair winning")
+    void testArchive() throws Exception {
+        LocalDate date = LocalDate.of(2025, 1, 2);
+        // Small blocks and segments, so that the records span several of them
+        try (ResponseArchive archive = new ResponseArchive(tempDir, 2048, 512)) {
+            for (int i = 0; i < 100; i++) {
+                archive.append("BE000000000" + (i % 10), date.plusDays(i / 10), PayloadBuffer.of("{\"value\":" + i + ",\"text\":\"Générale\"}"));
+            }
+        }
+        try (ResponseArchive archive = new ResponseArchive(tempDir, 2048, 512)) {
+            archive.append("BE0000000003", date, PayloadBuffer.of("{\"value\":\"again\"}"));
+        }
+
+        assertEquals(List.of("segment-000001.dat", "segment-000002.dat"),
+            ResponseArchive.segments(tempDir).stream().limit(2).map(path -> path.getFileName().toString()).toList());
+        Map<ResponseArchive.Key, ResponseArchive.Location> index = ResponseArchive.index(tempDir);
+        assertEquals(100, index.size());
+        assertEquals("{\"value\":42,\"text\":\"Générale\"}",
+            ResponseArchive.read(index.get(new ResponseArchive.Key("BE0000000002", date.plusDays(4)))).toString());
+        assertEquals("{\"value\":\"again\"}", ResponseArchive.read(index.get(new ResponseArchive.Key("BE0000000003", date))).toString());
+
+        List<String> bodies = new ArrayList<>();
+        assertEquals(101, ResponseArchive.scan(tempDir, entry -> {
+            if (entry.location().equals(index.get(entry.key()))) {
+                bodies.add(entry.body().toString());
+            }
+        }));
+        assertEquals(100, bodies.size());
+        assertEquals("{\"value\":0,\"text\":\"Générale\"}", bodies.get(0));
+    }
+
+    @Test
+    @DisplayName("The blocks written but not indexed when the process stopped should be found by the index")
+    void testUnindexedBlocks() throws Exception {
+        LocalDate date = LocalDate.of(2025, 1, 2);
+        try (ResponseArchive archive = new ResponseArchive(tempDir, 200, 256)) {
+            for (int i = 0; i < 100; i++) {
+                archive.append("BE000000000" + (i % 10), date.plusDays(i / 10), PayloadBuffer.of("{\"value\":" + i + "}"));
+            }
+        }
+        Map<ResponseArchive.Key, ResponseArchive.Location> index = ResponseArchive.index(tempDir);
+        assertEquals(100, index.size());
+
+        // Index of the first segment cut in the middle of an entry, index of the last one never written
+        List<Path> segments = ResponseArchive.segments(tempDir);
+        assertTrue(segments.size() > 2, segments.toString());
+        Path firstIndex = tempDir.resolve("segment-000001.idx");
+        byte[] entries = Files.readAllBytes(firstIndex);
+        Files.write(firstIndex, Arrays.copyOf(entries, entries.length / 2 + 3));
+        Files.delete(tempDir.resolve(segments.get(segments.size() - 1).getFileName().toString().replace(".dat", ".idx")));
+
+        assertEquals(index, ResponseArchive.index(tempDir));
+    }
+}
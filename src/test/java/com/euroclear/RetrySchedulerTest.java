@@ -0,0 +1,88 @@
+package com.euroclear;
+
+import com.euroclear.util.CsvFileWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetrySchedulerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 6);
+
+    @Test
+    @DisplayName("The backoff should double up to the maximum, with half of it random")
+    void testBackoff(@TempDir Path dir) throws Exception {
+        try (CsvFileWriter deadLetters = new CsvFileWriter(dir.resolve("dead-letters.csv"));
+             RetryScheduler scheduler = new RetryScheduler(Runnable::run, deadLetters, 5, 100, 1000)) {
+            // 100, 200, 400, 800 ms, then the maximum, even when the shift would overflow
+            long[] delays = {100, 200, 400, 800, 1000, 1000};
+            int[] attempts = {1, 2, 3, 4, 5, 40};
+            for (int a = 0; a < attempts.length; a++) {
+                int attempt = attempts[a];
+                long delay = delays[a];
+                long min = Long.MAX_VALUE;
+                long max = 0;
+                for (int i = 0; i < 1000; i++) {
+                    long backoff = scheduler.backoff(attempt);
+                    assertTrue(backoff >= delay / 2 && backoff <= delay, "attempt " + attempt + ": " + backoff);
+                    min = Math.min(min, backoff);
+                    max = Math.max(max, backoff);
+                }
+                // The jitter spreads the retries over the random half
+                assertTrue(min < delay * 0.6 && max > delay * 0.9, "attempt " + attempt + ": " + min + " - " + max);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("An item failing on every attempt should be dead-lettered once its attempts are exhausted")
+    void testDeadLetter(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("dead-letters.csv");
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+        try (CsvFileWriter deadLetters = new CsvFileWriter(file);
+             RetryScheduler scheduler = new RetryScheduler(Runnable::run, deadLetters, 3, 10, 50)) {
+            scheduler.start(workItem -> {
+                attempts.add(workItem.attempt());
+                scheduler.schedule(workItem, "HTTP 503");
+            });
+            scheduler.schedule(new WorkItem("BE0000000404", DATE), "HTTP 503");
+            assertTimeoutPreemptively(Duration.ofSeconds(5), scheduler::awaitIdle);
+            assertEquals(0, scheduler.getPending());
+        }
+        assertEquals(List.of(1, 2), attempts);
+        assertEquals(List.of("\"BE0000000404\",\"2025-01-06\",3,\"HTTP 503\""), Files.readAllLines(file));
+    }
+
+    @Test
+    @DisplayName("The items still waiting when the scheduler is closed should be dead-lettered, not retried")
+    void testClose(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("dead-letters.csv");
+        List<WorkItem> retried = new CopyOnWriteArrayList<>();
+        try (CsvFileWriter deadLetters = new CsvFileWriter(file)) {
+            RetryScheduler scheduler = new RetryScheduler(Runnable::run, deadLetters, 5, 60_000, 60_000);
+            scheduler.start(retried::add);
+            scheduler.schedule(new WorkItem("BE0000000404", DATE), "timeout");
+            scheduler.schedule(new WorkItem("BE0000344706", DATE), "timeout");
+            assertEquals(2, scheduler.getPending());
+
+            scheduler.close();
+            assertEquals(0, scheduler.getPending());
+            assertTimeoutPreemptively(Duration.ofSeconds(1), scheduler::awaitIdle);
+        }
+        assertTrue(retried.isEmpty());
+        List<String> rows = Files.readAllLines(file);
+        assertEquals(2, rows.size());
+        assertTrue(rows.stream().allMatch(row -> row.endsWith(",1,\"run ended before the retry\"")), rows.toString());
+    }
+}
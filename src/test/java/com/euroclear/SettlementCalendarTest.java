@@ -0,0 +1,52 @@
+package com.euroclear;
+
+import com.euroclear.util.BusinessDayIndex;
+import com.euroclear.util.SettlementCalendar;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SettlementCalendarTest {
+
+    @Test
+    @DisplayName("TARGET2 should be closed on New Year, Easter, Labour Day and Christmas")
+    void testTarget2() {
+        SettlementCalendar target2 = SettlementCalendar.target2();
+        List<LocalDate> holidays = List.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 4, 18), LocalDate.of(2025, 4, 21),
+            LocalDate.of(2025, 5, 1), LocalDate.of(2025, 12, 25), LocalDate.of(2025, 12, 26),
+            LocalDate.of(2024, 3, 29), LocalDate.of(2024, 4, 1));
+        for (LocalDate holiday : holidays) {
+            assertTrue(target2.isHoliday(holiday), holiday.toString());
+        }
+        assertFalse(target2.isHoliday(LocalDate.of(2025, 4, 17)));
+        assertFalse(target2.isHoliday(LocalDate.of(2025, 12, 24)));
+        assertEquals(LocalDate.of(2038, 4, 25), SettlementCalendar.easterSunday(2038));
+
+        // 2025: 261 week days, 6 TARGET2 closing days out of the week-ends
+        BusinessDayIndex index = new BusinessDayIndex(target2, 2025, 2025);
+        assertEquals(255, index.count(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31)));
+        assertEquals(List.of(LocalDate.of(2025, 4, 17), LocalDate.of(2025, 4, 22)),
+            index.businessDays(LocalDate.of(2025, 4, 17), LocalDate.of(2025, 4, 22)).toList());
+    }
+
+    @Test
+    @DisplayName("The calendars of the CALENDARS variable should be combined")
+    void testCalendarFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("xbru.txt");
+        Files.writeString(file, "# Brussels\n2025-07-21 # National day\n\n");
+        SettlementCalendar calendar = SettlementCalendar.of("TARGET2, " + file);
+        assertTrue(calendar.isHoliday(LocalDate.of(2025, 7, 21)));
+        assertTrue(calendar.isHoliday(LocalDate.of(2025, 5, 1)));
+        assertFalse(SettlementCalendar.of("NONE").isHoliday(LocalDate.of(2025, 5, 1)));
+    }
+}
@@ -0,0 +1,78 @@
+package com.euroclear;
+
+import com.euroclear.util.Sharding;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardMergeTest {
+
+    @Test
+    @DisplayName("The shard files should be merged into the monthly file with a single header")
+    void testMerge(@TempDir Path dir) throws IOException {
+        Files.write(dir.resolve("2025-01-shard-0.csv"), List.of("header", "a", "b"));
+        Files.write(dir.resolve("2025-01-shard-1.csv"), List.of("header", "c"));
+        Files.write(dir.resolve("2025-02-shard-1.csv"), List.of("header"));
+
+        assertEquals(3, ShardMerge.merge(dir, "header"));
+        assertEquals(List.of("header", "a", "b", "c"), Files.readAllLines(dir.resolve("2025-01.csv")));
+        assertEquals(List.of("header"), Files.readAllLines(dir.resolve("2025-02.csv")));
+        assertFalse(Files.exists(dir.resolve("2025-01-shard-0.csv")));
+
+        // Merging again appends nothing
+        assertEquals(0, ShardMerge.merge(dir, "header"));
+        // A later run of a shard is appended without a second header
+        Files.write(dir.resolve("2025-01-shard-0.csv"), List.of("header", "d"));
+        assertEquals(1, ShardMerge.merge(dir, "header"));
+        assertEquals(List.of("header", "a", "b", "c", "d"), Files.readAllLines(dir.resolve("2025-01.csv")));
+    }
+
+    @Test
+    @DisplayName("A merge interrupted by a crash should be finished or started again, never duplicating rows")
+    void testInterruptedMerge(@TempDir Path dir) throws IOException {
+        Files.write(dir.resolve("2025-01.csv"), List.of("header", "a"));
+        Files.write(dir.resolve("2025-01-shard-0.csv"), List.of("header", "b"));
+        Files.write(dir.resolve("2025-02-shard-0.csv"), List.of("header", "c"));
+
+        // Crash after the marker of January: its merged file replaces the month file
+        Files.write(dir.resolve("2025-01.csv.merged"), List.of("header", "a", "b"));
+        Files.write(dir.resolve("2025-01.merge"), List.of("2025-01-shard-0.csv"));
+        // Crash before the marker of February: its merged file is dropped
+        Files.write(dir.resolve("2025-02.csv.merged"), List.of("header", "c", "c"));
+
+        assertEquals(1, ShardMerge.merge(dir, "header"));
+        assertEquals(List.of("header", "a", "b"), Files.readAllLines(dir.resolve("2025-01.csv")));
+        assertEquals(List.of("header", "c"), Files.readAllLines(dir.resolve("2025-02.csv")));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("2025-01.csv", "2025-02.csv"), files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Each pair should belong to one shard, and the shards should be balanced")
+    void testShardOf() {
+        int[] counts = new int[4];
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        for (String isin : List.of("AT0000A326N4", "BE0000344706", "BE0000000404")) {
+            for (int day = 0; day < 400; day++) {
+                int shard = Sharding.shardOf(isin, start.plusDays(day), 4);
+                assertEquals(shard, Sharding.shardOf(isin, start.plusDays(day), 4));
+                counts[shard]++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(count > 200 && count < 400, "Unbalanced shards: " + count);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.euroclear;
+
+import com.euroclear.util.TokenCache;
+import com.microsoft.aad.msal4j.IAuthenticationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenCacheTest {
+
+    @Test
+    @DisplayName("Concurrent callers without a token should all wait on a single acquisition")
+    void testSingleFlight() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<IAuthenticationResult> acquisition = new CompletableFuture<>();
+        TokenCache cache = new TokenCache("single", () -> {
+            calls.incrementAndGet();
+            return acquisition;
+        }, 60_000);
+
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            threads.add(Thread.ofVirtual().start(() -> tokens.add(cache.getAccessToken())));
+        }
+        assertSame(cache.refresh(), cache.refresh());
+        Thread.sleep(200);
+        acquisition.complete(result("token-1", 3_600_000));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(32, tokens.size());
+        assertTrue(tokens.stream().allMatch("token-1"::equals), tokens.toString());
+    }
+
+    @Test
+    @DisplayName("The token should be renewed in the background, margin before its expiration but not before half of its lifetime")
+    void testProactiveRefresh() throws InterruptedException {
+        // Lifetime of 14 s, handed out until 5 s before the expiration: renewed after 8 s with a margin of 6 s, after
+        // 7 s with a margin of 60 s
+        AtomicInteger shortMarginCalls = new AtomicInteger();
+        TokenCache shortMargin = new TokenCache("short", () ->
+            CompletableFuture.completedFuture(result("token-" + shortMarginCalls.incrementAndGet(), 14_000)), 6000);
+        AtomicInteger longMarginCalls = new AtomicInteger();
+        TokenCache longMargin = new TokenCache("long", () ->
+            CompletableFuture.completedFuture(result("token-" + longMarginCalls.incrementAndGet(), 14_000)), 60_000);
+
+        assertEquals("token-1", shortMargin.getAccessToken());
+        assertEquals("token-1", longMargin.getAccessToken());
+        Thread.sleep(6500);
+        assertEquals("token-1", shortMargin.getAccessToken());
+        assertEquals("token-1", longMargin.getAccessToken());
+
+        Thread.sleep(1000);
+        assertEquals(1, shortMarginCalls.get());
+        assertEquals(2, longMarginCalls.get());
+        assertEquals("token-1", shortMargin.getAccessToken());
+        assertEquals("token-2", longMargin.getAccessToken());
+
+        Thread.sleep(1000);
+        assertEquals(2, shortMarginCalls.get());
+        assertEquals("token-2", shortMargin.getAccessToken());
+        assertEquals(2, longMarginCalls.get());
+    }
+
+    private static IAuthenticationResult result(String token, long lifetimeMillis) {
+        Date expiresOn = new Date(System.currentTimeMillis() + lifetimeMillis);
+        return (IAuthenticationResult) Proxy.newProxyInstance(IAuthenticationResult.class.getClassLoader(),
+            new Class<?>[] {IAuthenticationResult.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "accessToken" -> token;
+                case "expiresOnDate" -> expiresOn;
+                default -> null;
+            });
+    }
+}
@@ -0,0 +1,72 @@
+package com.euroclear;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class WorkSchedulerTest {
+
+    private static final String[] ISINS = {"BE0000001", "BE0000002", "BE0000003"};
+    private static final List<LocalDate> DATES = IntStream.rangeClosed(1, 100).mapToObj(i -> LocalDate.of(2025, 1, 1).plusDays(i)).toList();
+
+    @Test
+    @DisplayName("The workload should be pulled lazily, the newest dates first and the ISINs interleaved")
+    void testWorkload() {
+        Workload workload = new Workload(ISINS, DATES, Workload.Priority.NEWEST_FIRST);
+        workload.restrict(1, null, LocalDate.of(2025, 4, 10));
+        workload.exclude(2);
+        workload.skipIf((isin, date) -> date.equals(LocalDate.of(2025, 4, 10)));
+        assertEquals(199, workload.size());
+
+        Workload.Cursor cursor = workload.cursor();
+        assertEquals(new WorkItem("BE0000001", LocalDate.of(2025, 4, 11)), cursor.next());
+        assertEquals(new WorkItem("BE0000001", LocalDate.of(2025, 4, 9)), cursor.next());
+        assertEquals(new WorkItem("BE0000002", LocalDate.of(2025, 4, 9)), cursor.next());
+        int pulled = 3;
+        while (cursor.next() != null) {
+            pulled++;
+        }
+        assertEquals(197, pulled);
+        assertNull(cursor.next());
+        assertEquals(LocalDate.of(2025, 4, 10), workload.lastDates().get("BE0000002"));
+    }
+
+    @Test
+    @DisplayName("Every work item should be processed once")
+    void testRun() throws InterruptedException {
+        Workload workload = new Workload(ISINS, DATES, Workload.Priority.OLDEST_FIRST);
+        List<WorkItem> workItems = new ArrayList<>();
+        for (int i = 0; i < ISINS.length; i++) {
+            workItems.addAll(workload.workItems(i));
+        }
+
+        Set<WorkItem> processed = ConcurrentHashMap.newKeySet();
+        List<WorkItem> duplicates = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            new WorkScheduler(8).run(workload.cursor(), workItem -> {
+                // One slow ISIN: its items are stolen by the other workers
+                if (workItem.isin().equals("BE0000001")) {
+                    Thread.sleep(2);
+                }
+                if (!processed.add(workItem)) {
+                    synchronized (duplicates) {
+                        duplicates.add(workItem);
+                    }
+                }
+            }, executor);
+        }
+        assertEquals(Set.copyOf(workItems), processed);
+        assertEquals(List.of(), duplicates);
+    }
+}